@@ -5,8 +5,23 @@ create table CacheEvent (
     updateMode varchar(10) not null,
     time datetime(3) not null default now(3),
     data text,
+    seq bigint unsigned,
     primary key(id)
 );
 
 create index IX_CacheEvent_cacheName on CacheEvent(cacheName, id);
-create index IX_CacheEvent_cacheName_updateMode on CacheEvent(cacheName, updateMode, id);
\ No newline at end of file
+create index IX_CacheEvent_cacheName_updateMode on CacheEvent(cacheName, updateMode, id);
+create unique index IX_CacheEvent_cacheName_seq on CacheEvent(cacheName, seq);
+
+-- 开启localcache.event.store.mysql.seqEnabled时使用，已有的CacheEvent表需先执行：
+-- alter table CacheEvent add column seq bigint unsigned;
+-- create unique index IX_CacheEvent_cacheName_seq on CacheEvent(cacheName, seq);
+drop table if exists CacheEventSeq;
+create table CacheEventSeq (
+    cacheName varchar(40) not null,
+    seq bigint unsigned not null,
+    primary key(cacheName)
+);
+
+-- 可选：清理事件时归档（localcache.event.store.mysql.archiveTableName）
+-- create table CacheEventArchive like CacheEvent;
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.cbcc.framework.localcache.benchmark;
+
+import com.cbcc.framework.encrypt.DefaultEncryptor;
+import com.cbcc.framework.localcache.event.*;
+import com.cbcc.framework.localcache.event.codec.AesByteEncryptor;
+import com.cbcc.framework.localcache.event.codec.BinaryCacheEventCodec;
+import com.cbcc.framework.localcache.event.codec.ICacheEventCodec;
+import com.cbcc.framework.localcache.event.codec.JsonCacheEventCodec;
+import com.cbcc.framework.localcache.map.MapUpdate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RabbitCacheEventBus发送和接收消息时的编解码（包括加密）开销。
+ * binary-encrypted直接加密字节（cacheEventByteEncryptor），binary-string-encrypted为没有字节加密器时经Base64的退化方式。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventCodecBenchmark {
+
+    private static final String CACHE_NAME = "benchmark";
+    private static final String ENCRYPT_KEY = "benchmark-key";
+    private static final String ENCRYPT_IV = "benchmark-iv";
+
+    @Param({"json", "json-encrypted", "binary", "binary-encrypted", "binary-string-encrypted"})
+    String codecType;
+
+    @Param({"update", "batch", "checkpoint"})
+    String payloadType;
+
+    private ICacheEventCodec codec;
+    private CacheEvent event;
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (codecType) {
+            case "json":
+                codec = new JsonCacheEventCodec();
+                break;
+            case "json-encrypted":
+                codec = new JsonCacheEventCodec(new DefaultEncryptor(ENCRYPT_KEY, ENCRYPT_IV));
+                break;
+            case "binary":
+                codec = new BinaryCacheEventCodec().registerType(1, MapUpdate.class);
+                break;
+            case "binary-encrypted":
+                codec = new BinaryCacheEventCodec(new AesByteEncryptor(ENCRYPT_KEY, ENCRYPT_IV))
+                        .registerType(1, MapUpdate.class);
+                break;
+            case "binary-string-encrypted":
+                codec = new BinaryCacheEventCodec(new DefaultEncryptor(ENCRYPT_KEY, ENCRYPT_IV))
+                        .registerType(1, MapUpdate.class);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown codec: " + codecType);
+        }
+
+        switch (payloadType) {
+            case "update":
+                event = new CacheEvent(CACHE_NAME, newUpdateEvent(1L), "remote");
+                break;
+            case "batch":
+                List<UpdateEvent> events = new ArrayList<>();
+                for (long i = 1; i <= 10; i++) {
+                    events.add(newUpdateEvent(i));
+                }
+
+                event = new CacheEvent(CACHE_NAME, new UpdateEventBatch(events), "remote");
+                break;
+            case "checkpoint":
+                Checkpoint checkpoint = new Checkpoint();
+                checkpoint.setCacheName(CACHE_NAME);
+                checkpoint.setTime(new Date());
+                checkpoint.setEventId(1L);
+                checkpoint.setDigest("0123456789abcdef");
+                event = new CacheEvent(CACHE_NAME, checkpoint, "remote");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown payload: " + payloadType);
+        }
+
+        bytes = codec.encode(event);
+    }
+
+    private static UpdateEvent newUpdateEvent(long id) {
+        UpdateEvent event = new UpdateEvent();
+        event.setId(id);
+        event.setSeq(id);
+        event.setCacheName(CACHE_NAME);
+        event.setUpdateMode(UpdateMode.UPDATE);
+        event.setTime(new Date());
+        event.setData(MapUpdate.put(id, new Item(id)));
+        return event;
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(event);
+    }
+
+    @Benchmark
+    public CacheEvent decode() {
+        return codec.decode(bytes);
+    }
+
+    @Benchmark
+    public CacheEvent roundTrip() {
+        return codec.decode(codec.encode(event));
+    }
+
+}
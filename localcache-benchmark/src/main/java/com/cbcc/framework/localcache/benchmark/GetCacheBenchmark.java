@@ -0,0 +1,146 @@
+package com.cbcc.framework.localcache.benchmark;
+
+import com.cbcc.framework.localcache.CacheManager;
+import com.cbcc.framework.localcache.map.MapCache;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CacheManager.getCache()的读取路径：事务外、长事务中（可选地刷新过缓存）、每次读取开启一个新事务，
+ * 以及批处理中常见的在事务内反复刷新并读取（对比是否开启transactionOverlay）。
+ * baselineVolatileRead直接从volatile字段读取同一个缓存对象，作为读取路径的下限。
+ * 键在Setup中预先装箱，MapCache.get本身不分配对象，-prof gc看到的分配都来自getCache路径（开启事务的用例包含事务同步对象的分配）。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GetCacheBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class CacheState {
+
+        @Param({"10000"})
+        int size;
+
+        @Param({"false", "true"})
+        boolean transactionOverlay;
+
+        CacheManager<MapCache<Long, Item>> cacheManager;
+        volatile MapCache<Long, Item> cache;
+
+        Long[] keys;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            cacheManager = CacheManager.newBuilder("benchmark", ItemCacheSupports.versionedMapSupport(size))
+                    .eventStore(new InMemoryCacheEventStore())
+                    .eventBus(new InMemoryCacheEventBus())
+                    .snapshotPersister(new InMemoryCacheSnapshotPersister())
+                    .transactionOverlay(transactionOverlay)
+                    .build();
+
+            cacheManager.warmUp();
+            cache = cacheManager.getCache();
+
+            keys = new Long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = (long) i;
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        int index;
+
+        Long nextKey(Long[] keys) {
+            Long key = keys[index];
+            index = index + 1 == keys.length ? 0 : index + 1;
+            return key;
+        }
+    }
+
+    /**
+     * 模拟一个贯穿整个迭代的事务，可选地在事务中刷新过缓存（此时读取事务内重新初始化的缓存）
+     */
+    @State(Scope.Thread)
+    public static class TransactionState {
+
+        @Param({"false", "true"})
+        boolean flushed;
+
+        @Setup(Level.Iteration)
+        public void begin(CacheState state) {
+            beginTransaction();
+            if (flushed) {
+                state.cacheManager.flushCache();
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void end() {
+            endTransaction(false);
+        }
+    }
+
+    static void beginTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+    }
+
+    static void endTransaction(boolean committed) {
+        try {
+            int status = committed ? TransactionSynchronization.STATUS_COMMITTED
+                    : TransactionSynchronization.STATUS_ROLLED_BACK;
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(status);
+            }
+        } finally {
+            TransactionSynchronizationManager.clear();
+        }
+    }
+
+    @Benchmark
+    public Item baselineVolatileRead(CacheState state, ThreadState thread) {
+        return state.cache.get(thread.nextKey(state.keys));
+    }
+
+    @Benchmark
+    public Item getCacheOutsideTransaction(CacheState state, ThreadState thread) {
+        return state.cacheManager.getCache().get(thread.nextKey(state.keys));
+    }
+
+    @Benchmark
+    public Item getCacheInsideTransaction(CacheState state, ThreadState thread, TransactionState tx) {
+        return state.cacheManager.getCache().get(thread.nextKey(state.keys));
+    }
+
+    @Benchmark
+    public Item getCacheInNewTransaction(CacheState state, ThreadState thread) {
+        beginTransaction();
+        try {
+            return state.cacheManager.getCache().get(thread.nextKey(state.keys));
+        } finally {
+            endTransaction(true);
+        }
+    }
+
+    @Benchmark
+    public Item flushAndGetCacheInTransaction(CacheState state, ThreadState thread) {
+        beginTransaction();
+        try {
+            state.cacheManager.flushCache();
+            return state.cacheManager.getCache().get(thread.nextKey(state.keys));
+        } finally {
+            endTransaction(false);
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.cbcc.framework.localcache.benchmark;
+
+import com.cbcc.framework.localcache.CacheManager;
+import com.cbcc.framework.localcache.event.*;
+import com.cbcc.framework.localcache.map.MapCache;
+import com.cbcc.framework.localcache.map.MapCacheSupport;
+import com.cbcc.framework.localcache.map.MapUpdate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CacheManager.handle()的吞吐：其它节点广播的更新事件（单条和批量）以及检查点事件
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandleEventBenchmark {
+
+    private static final String CACHE_NAME = "benchmark";
+    private static final String REMOTE_MANAGER_ID = "remote";
+    private static final int BATCH_SIZE = 10;
+
+    @Param({"10000"})
+    int size;
+
+    private CacheManager<MapCache<Long, Item>> cacheManager;
+    private Item[] items;
+    private long eventId;
+    private CacheEvent checkpointEvent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MapCacheSupport<Long, Item> support = ItemCacheSupports.mapSupport(size);
+        InMemoryCacheEventStore eventStore = new InMemoryCacheEventStore();
+        cacheManager = CacheManager.newBuilder(CACHE_NAME, support)
+                .eventStore(eventStore)
+                .eventBus(new InMemoryCacheEventBus())
+                .snapshotPersister(new InMemoryCacheSnapshotPersister())
+                .build();
+
+        cacheManager.warmUp();
+        cacheManager.updateCache(MapUpdate.put(0L, new Item(0L)));
+
+        items = new Item[size];
+        for (int i = 0; i < size; i++) {
+            items[i] = new Item(i);
+        }
+
+        UpdateEvent last = eventStore.getLastUpdateEvent(CACHE_NAME);
+        eventId = last.getId();
+
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.setCacheName(CACHE_NAME);
+        checkpoint.setTime(new Date());
+        checkpoint.setEventId(last.getId());
+        checkpoint.setDigest(support.currentDigest(cacheManager.getCache()));
+        checkpointEvent = new CacheEvent(CACHE_NAME, checkpoint, REMOTE_MANAGER_ID);
+    }
+
+    private UpdateEvent nextUpdateEvent() {
+        long id = ++eventId;
+        int i = (int) (id % size);
+
+        UpdateEvent event = new UpdateEvent();
+        event.setId(id);
+        event.setCacheName(CACHE_NAME);
+        event.setUpdateMode(UpdateMode.UPDATE);
+        event.setTime(new Date());
+        event.setData(MapUpdate.put((long) i, items[i]));
+        return event;
+    }
+
+    @Benchmark
+    public void handleUpdateEvent() {
+        cacheManager.handle(new CacheEvent(CACHE_NAME, nextUpdateEvent(), REMOTE_MANAGER_ID));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void handleUpdateEventBatch() {
+        List<UpdateEvent> events = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            events.add(nextUpdateEvent());
+        }
+
+        cacheManager.handle(new CacheEvent(CACHE_NAME, new UpdateEventBatch(events), REMOTE_MANAGER_ID));
+    }
+
+    /**
+     * 与本节点一致的检查点：只比较摘要
+     */
+    @Benchmark
+    public void handleCheckpoint() {
+        cacheManager.handle(checkpointEvent);
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.cbcc.framework.localcache.benchmark;
+
+import com.cbcc.framework.localcache.event.CacheEvent;
+import com.cbcc.framework.localcache.event.ICacheEventListener;
+import com.cbcc.framework.localcache.event.bus.ICacheEventBus;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 内存中的事件总线，在发布线程上同步分发事件，只用于基准测试
+ */
+public class InMemoryCacheEventBus implements ICacheEventBus {
+
+    private final Map<String, List<ICacheEventListener>> listenersMap = new ConcurrentHashMap<>();
+
+    @Override
+    public void addEventListener(String cacheName, ICacheEventListener listener) {
+        listenersMap.computeIfAbsent(cacheName, k -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    @Override
+    public void publishEvent(CacheEvent event) {
+        List<ICacheEventListener> listeners = listenersMap.get(event.getCacheName());
+        if (listeners == null) {
+            return;
+        }
+
+        for (ICacheEventListener listener : listeners) {
+            listener.handle(event);
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.cbcc.framework.localcache.benchmark;
+
+import com.cbcc.framework.localcache.event.UpdateEvent;
+import com.cbcc.framework.localcache.event.UpdateMode;
+import com.cbcc.framework.localcache.event.store.ICacheEventStore;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存中的事件存储，只用于基准测试，排除数据库的影响
+ */
+public class InMemoryCacheEventStore implements ICacheEventStore {
+
+    private static class CacheEvents {
+        private final ConcurrentNavigableMap<Long, UpdateEvent> events = new ConcurrentSkipListMap<>();
+        private volatile long lastFlushId;
+    }
+
+    private final Map<String, CacheEvents> eventsMap = new ConcurrentHashMap<>();
+    private final AtomicLong lastId = new AtomicLong();
+
+    /**
+     * 保留的事件数，超过后丢弃最早的事件，避免长时间运行的基准测试耗尽内存
+     */
+    private final int capacity;
+
+    public InMemoryCacheEventStore() {
+        this(100000);
+    }
+
+    public InMemoryCacheEventStore(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public UpdateEvent createUpdateEvent(String cacheName, UpdateMode updateMode, Object data) {
+        UpdateEvent event = new UpdateEvent();
+        event.setId(lastId.incrementAndGet());
+        event.setCacheName(cacheName);
+        event.setUpdateMode(updateMode);
+        event.setTime(new Date());
+        event.setData(data);
+
+        CacheEvents cacheEvents = eventsMap.computeIfAbsent(cacheName, k -> new CacheEvents());
+        cacheEvents.events.put(event.getId(), event);
+        if (UpdateMode.FLUSH.equals(updateMode)) {
+            cacheEvents.lastFlushId = event.getId();
+        }
+
+        if (cacheEvents.events.size() > capacity) {
+            cacheEvents.events.pollFirstEntry();
+        }
+
+        return event;
+    }
+
+    @Override
+    public UpdateEvent getLastUpdateEvent(String cacheName) {
+        CacheEvents cacheEvents = eventsMap.get(cacheName);
+        if (cacheEvents == null) {
+            return null;
+        }
+
+        Map.Entry<Long, UpdateEvent> entry = cacheEvents.events.lastEntry();
+        return entry == null ? null : entry.getValue();
+    }
+
+    @Override
+    public List<UpdateEvent> getUpdateEventList(String cacheName, Long afterId, int limit) {
+        List<UpdateEvent> result = new ArrayList<>();
+        CacheEvents cacheEvents = eventsMap.get(cacheName);
+        if (cacheEvents == null) {
+            return result;
+        }
+
+        for (UpdateEvent event : cacheEvents.events.tailMap(afterId == null ? 0L : afterId, false).values()) {
+            if (result.size() >= limit) {
+                break;
+            }
+
+            result.add(event);
+        }
+
+        return result;
+    }
+
+    /**
+     * 不分配缓存序号，不会按序号补齐事件
+     */
+    @Override
+    public List<UpdateEvent> getUpdateEventListBySeq(String cacheName, Long afterSeq, int limit) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean detectsFlushAfter(String cacheName, Long afterId) {
+        CacheEvents cacheEvents = eventsMap.get(cacheName);
+        return cacheEvents != null && cacheEvents.lastFlushId > (afterId == null ? 0L : afterId);
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.cbcc.framework.localcache.benchmark;
+
+import com.cbcc.framework.localcache.event.UpdateEvent;
+import com.cbcc.framework.localcache.snapshot.ICacheSnapshotPersister;
+import com.cbcc.framework.localcache.snapshot.Snapshot;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内存中的快照存储，每个缓存只保留最新的快照，只用于基准测试
+ */
+public class InMemoryCacheSnapshotPersister implements ICacheSnapshotPersister {
+
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> contents = new ConcurrentHashMap<>();
+
+    @Override
+    public Snapshot createSnapshot(String cacheName, UpdateEvent event, InputStream input, String digest) {
+        byte[] bytes;
+        try {
+            bytes = IOUtils.toByteArray(input);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read snapshot, cache: " + cacheName, e);
+        }
+
+        Snapshot snapshot = new Snapshot();
+        snapshot.setId(UUID.randomUUID().toString());
+        snapshot.setCacheName(cacheName);
+        snapshot.setTime(new Date());
+        snapshot.setEventId(event == null ? null : event.getId());
+        snapshot.setDigest(digest);
+
+        contents.put(snapshot.getId(), bytes);
+        Snapshot previous = snapshots.put(cacheName, snapshot);
+        if (previous != null) {
+            contents.remove(previous.getId());
+        }
+
+        return snapshot;
+    }
+
+    @Override
+    public Snapshot getLastestSnapshot(String cacheName) {
+        return snapshots.get(cacheName);
+    }
+
+    @Override
+    public InputStream getInputStream(Snapshot snapshot) {
+        byte[] bytes = contents.get(snapshot.getId());
+        if (bytes == null) {
+            throw new IllegalStateException("Snapshot not found: " + snapshot.getId());
+        }
+
+        return new ByteArrayInputStream(bytes);
+    }
+
+}
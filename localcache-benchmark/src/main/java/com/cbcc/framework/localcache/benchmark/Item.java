@@ -0,0 +1,26 @@
+package com.cbcc.framework.localcache.benchmark;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+@Getter
+@Setter
+public class Item {
+
+    private long id;
+    private String code;
+    private String name;
+    private BigDecimal price;
+
+    public Item() {}
+
+    public Item(long id) {
+        this.id = id;
+        this.code = String.format("ITEM%08d", id);
+        this.name = "Benchmark item " + id;
+        this.price = BigDecimal.valueOf(id % 10000, 2);
+    }
+
+}
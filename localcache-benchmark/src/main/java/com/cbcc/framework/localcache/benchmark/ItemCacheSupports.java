@@ -0,0 +1,73 @@
+package com.cbcc.framework.localcache.benchmark;
+
+import com.cbcc.framework.localcache.IVersionedCacheSupport;
+import com.cbcc.framework.localcache.map.*;
+
+import java.util.function.BiConsumer;
+
+/**
+ * 基准测试使用的缓存支持，数据源为内存中生成的size个Item
+ */
+public final class ItemCacheSupports {
+
+    private static class VersionedMapSupport extends MapCacheSupport<Long, Item>
+            implements IVersionedCacheSupport<MapCache<Long, Item>> {
+
+        private final int size;
+
+        VersionedMapSupport(int size) {
+            super(Long.class, Item.class);
+            this.size = size;
+        }
+
+        @Override
+        protected void loadAll(boolean checkpoint, BiConsumer<Long, Item> consumer) {
+            for (long i = 0; i < size; i++) {
+                consumer.accept(i, new Item(i));
+            }
+        }
+    }
+
+    private ItemCacheSupports() {}
+
+    public static MapCacheSupport<Long, Item> mapSupport(final int size) {
+        return new MapCacheSupport<Long, Item>(Long.class, Item.class) {
+            @Override
+            protected void loadAll(boolean checkpoint, BiConsumer<Long, Item> consumer) {
+                for (long i = 0; i < size; i++) {
+                    consumer.accept(i, new Item(i));
+                }
+            }
+        };
+    }
+
+    /**
+     * 多版本（写时复制）模式的mapSupport，transactionOverlay要求多版本缓存
+     */
+    public static MapCacheSupport<Long, Item> versionedMapSupport(int size) {
+        return new VersionedMapSupport(size);
+    }
+
+    public static LongMapCacheSupport<Item> longMapSupport(final int size) {
+        return new LongMapCacheSupport<Item>(Item.class) {
+            @Override
+            protected void loadAll(boolean checkpoint, LongMapCache.EntryConsumer<Item> consumer) {
+                for (long i = 0; i < size; i++) {
+                    consumer.accept(i, new Item(i));
+                }
+            }
+        };
+    }
+
+    public static OffHeapLongMapCacheSupport<Item> offHeapSupport(final int size) {
+        return new OffHeapLongMapCacheSupport<Item>(Item.class) {
+            @Override
+            protected void loadAll(boolean checkpoint, LongMapCache.EntryConsumer<Item> consumer) {
+                for (long i = 0; i < size; i++) {
+                    consumer.accept(i, new Item(i));
+                }
+            }
+        };
+    }
+
+}
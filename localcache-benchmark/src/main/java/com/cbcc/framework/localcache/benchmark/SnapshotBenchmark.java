@@ -0,0 +1,66 @@
+package com.cbcc.framework.localcache.benchmark;
+
+import com.cbcc.framework.localcache.ISnapshotableCacheSupport;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 快照的序列化和反序列化，对比内置的几种键值对缓存
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+
+    @Param({"map", "longMap", "offHeap"})
+    String supportType;
+
+    @Param({"10000", "100000"})
+    int size;
+
+    private ISnapshotableCacheSupport<Object> support;
+    private Object cache;
+    private byte[] bytes;
+    private ByteArrayOutputStream output;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (supportType) {
+            case "map":
+                support = (ISnapshotableCacheSupport) ItemCacheSupports.mapSupport(size);
+                break;
+            case "longMap":
+                support = (ISnapshotableCacheSupport) ItemCacheSupports.longMapSupport(size);
+                break;
+            case "offHeap":
+                support = (ISnapshotableCacheSupport) ItemCacheSupports.offHeapSupport(size);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown support: " + supportType);
+        }
+
+        cache = support.initCache(false);
+        output = new ByteArrayOutputStream();
+        support.serializeCache(cache, output);
+        bytes = output.toByteArray();
+    }
+
+    @Benchmark
+    public int serialize() {
+        output.reset();
+        support.serializeCache(cache, output);
+        return output.size();
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return support.deserializeCache(new ByteArrayInputStream(bytes));
+    }
+
+}
@@ -5,14 +5,31 @@ import com.cbcc.framework.encrypt.IEncryptor;
 import com.cbcc.framework.encrypt.NoopEncryptor;
 import com.cbcc.framework.localcache.event.bus.ICacheEventBus;
 import com.cbcc.framework.localcache.event.bus.RabbitCacheEventBus;
+import com.cbcc.framework.localcache.event.codec.AesByteEncryptor;
+import com.cbcc.framework.localcache.event.codec.BinaryCacheEventCodec;
+import com.cbcc.framework.localcache.event.codec.IByteEncryptor;
+import com.cbcc.framework.localcache.event.codec.ICacheEventCodec;
+import com.cbcc.framework.localcache.event.codec.JsonCacheEventCodec;
 import com.cbcc.framework.localcache.event.store.ICacheEventStore;
+import com.cbcc.framework.localcache.event.store.JournalCacheEventStore;
 import com.cbcc.framework.localcache.event.store.MySQLCacheEventStore;
 import com.cbcc.framework.localcache.snapshot.FileStoreCacheSnapshotPersister;
 import com.cbcc.framework.localcache.snapshot.ICacheSnapshotPersister;
+import com.cbcc.framework.localcache.snapshot.LocalCacheSnapshotPostProcessor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class CacheAutoConfiguration {
 
@@ -32,16 +49,50 @@ public class CacheAutoConfiguration {
         return new NoopEncryptor();
     }
 
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = "localcache.event.codec", havingValue = "json", matchIfMissing = true)
+    public ICacheEventCodec jsonCacheEventCodec() {
+        return new JsonCacheEventCodec();
+    }
+
+    @Bean("cacheEventByteEncryptor")
+    @ConditionalOnMissingBean(name = "cacheEventByteEncryptor")
+    @ConditionalOnExpression("'${localcache.event.codec:json}' == 'binary' && ${localcache.event.encryptor.enabled:true}")
+    public IByteEncryptor cacheEventByteEncryptor(@Value("${localcache.event.encryptor.key}") String cacheEventEncryptKey,
+                                                  @Value("${localcache.event.encryptor.iv}") String cacheEventEncryptIV) {
+
+        return new AesByteEncryptor(cacheEventEncryptKey, cacheEventEncryptIV);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = "localcache.event.codec", havingValue = "binary")
+    public ICacheEventCodec binaryCacheEventCodec() {
+        return new BinaryCacheEventCodec();
+    }
+
     @Bean
     @ConditionalOnProperty(name = "localcache.event.store.type", havingValue = "mysql", matchIfMissing = true)
     public ICacheEventStore mysqlCacheEventStore() {
         return new MySQLCacheEventStore();
     }
 
+    @Bean
+    @ConditionalOnProperty(name = "localcache.event.store.type", havingValue = "journal")
+    public ICacheEventStore journalCacheEventStore() {
+        return new JournalCacheEventStore();
+    }
+
     @Bean
     @ConditionalOnProperty(name = "localcache.event.bus.type", havingValue = "rabbit", matchIfMissing = true)
-    public ICacheEventBus rabbitCacheEventBus() {
-        return new RabbitCacheEventBus();
+    public ICacheEventBus rabbitCacheEventBus(@Value("${localcache.warmup.enabled:false}") boolean warmupEnabled) {
+        RabbitCacheEventBus eventBus = new RabbitCacheEventBus();
+        if (warmupEnabled) {
+            eventBus.setPhase(CacheWarmer.PHASE - 1);
+        }
+
+        return eventBus;
     }
 
     @Bean
@@ -50,17 +101,72 @@ public class CacheAutoConfiguration {
         return new FileStoreCacheSnapshotPersister();
     }
 
+    @Bean
+    @ConditionalOnProperty(name = "localcache.snapshot.local.enabled", havingValue = "true")
+    public static LocalCacheSnapshotPostProcessor localCacheSnapshotPostProcessor() {
+        return new LocalCacheSnapshotPostProcessor();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "localcache.warmup.enabled", havingValue = "true")
+    public CacheWarmer cacheWarmer() {
+        return new CacheWarmer();
+    }
+
+    @Bean(name = "cacheReplayExecutor", destroyMethod = "shutdownNow")
+    @ConditionalOnProperty(name = "localcache.replay.prefetch", havingValue = "true")
+    public ExecutorService cacheReplayExecutor(@Value("${localcache.replay.prefetchThreads:2}") int prefetchThreads) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("localcache-replay-");
+        threadFactory.setDaemon(true);
+
+        // 不排队，线程都忙时拒绝，由EventReplayer退回同步查询
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(prefetchThreads, prefetchThreads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Bean(name = "cacheRebuildExecutor", destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "localcache.rebuild.async", havingValue = "true")
+    public ExecutorService cacheRebuildExecutor(@Value("${localcache.rebuild.threads:2}") int rebuildThreads) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("localcache-rebuild-");
+        threadFactory.setDaemon(true);
+        return Executors.newFixedThreadPool(rebuildThreads, threadFactory);
+    }
+
     @Bean
     public CacheManagerConfiguration defaultCacheManagerConfiguration(ICacheEventStore eventStore,
                                                                       ICacheEventBus eventBus, 
                                                                       ICacheSnapshotPersister snapshotPersister,
-                                                                      @Value("${localcache.devMode}") boolean devMode) {
+                                                                      @Value("${localcache.devMode}") boolean devMode,
+                                                                      @Value("${localcache.rebuild.async:false}") boolean asyncRebuild,
+                                                                      @Value("${localcache.rebuild.maxStaleness:60000}") long maxStaleness,
+                                                                      @Value("${localcache.checkpoint.live:false}") boolean liveCheckpoint,
+                                                                      @Value("${localcache.checkpoint.fullVerifyInterval:10}") int fullVerifyInterval,
+                                                                      @Value("${localcache.replay.pageSize:100}") int replayPageSize,
+                                                                      @Value("${localcache.replay.maxPageSize:2000}") int maxReplayPageSize,
+                                                                      @Value("${localcache.transaction.overlay:false}") boolean transactionOverlay,
+                                                                      @Qualifier("cacheReplayExecutor") ObjectProvider<ExecutorService> replayExecutor,
+                                                                      @Qualifier("cacheRebuildExecutor") ObjectProvider<ExecutorService> rebuildExecutor,
+                                                                      ObjectProvider<ICacheMetrics> metrics) {
 
         CacheManagerConfiguration defaultConfig = new CacheManagerConfiguration();
         defaultConfig.setEventStore(eventStore);
         defaultConfig.setEventBus(eventBus);
         defaultConfig.setSnapshotPersister(snapshotPersister);
         defaultConfig.setDevMode(devMode);
+        defaultConfig.setAsyncRebuild(asyncRebuild);
+        defaultConfig.setMaxStaleness(maxStaleness);
+        defaultConfig.setLiveCheckpoint(liveCheckpoint);
+        defaultConfig.setFullVerifyInterval(fullVerifyInterval);
+        defaultConfig.setTransactionOverlay(transactionOverlay);
+        defaultConfig.setMetrics(metrics.getIfAvailable());
+
+        defaultConfig.setReplayPageSize(replayPageSize);
+        defaultConfig.setMaxReplayPageSize(maxReplayPageSize);
+        defaultConfig.setReplayExecutor(replayExecutor.getIfAvailable());
+        defaultConfig.setRebuildExecutor(rebuildExecutor.getIfAvailable());
+
         return defaultConfig;
     }
 
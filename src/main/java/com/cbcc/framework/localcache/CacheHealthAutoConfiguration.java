@@ -0,0 +1,21 @@
+package com.cbcc.framework.localcache;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * 类路径中存在Actuator且开启了缓存预热时，暴露预热状态的健康检查
+ */
+@ConditionalOnClass(name = "org.springframework.boot.actuate.health.HealthIndicator")
+public class CacheHealthAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean(name = "localCacheHealthIndicator")
+    @ConditionalOnProperty(name = "localcache.warmup.enabled", havingValue = "true")
+    public CacheWarmerHealthIndicator localCacheHealthIndicator(CacheWarmer cacheWarmer) {
+        return new CacheWarmerHealthIndicator(cacheWarmer);
+    }
+
+}
@@ -4,6 +4,10 @@ import com.cbcc.framework.localcache.event.*;
 import com.cbcc.framework.localcache.event.bus.ICacheEventBus;
 import com.cbcc.framework.localcache.event.store.ICacheEventStore;
 import com.cbcc.framework.localcache.snapshot.ICacheSnapshotPersister;
+import com.cbcc.framework.localcache.snapshot.ILocalSnapshotSource;
+import com.cbcc.framework.localcache.snapshot.LocalCacheSnapshotPersister;
+import com.cbcc.framework.localcache.snapshot.MeteredInputStream;
+import com.cbcc.framework.localcache.snapshot.RollingCacheSnapshotPersister;
 import com.cbcc.framework.localcache.snapshot.Snapshot;
 import com.cbcc.framework.utils.GUID;
 import lombok.Getter;
@@ -13,18 +17,23 @@ import org.springframework.context.annotation.Description;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Date;
-import java.util.List;
-import java.util.Objects;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
-public class CacheManager<C> implements ICacheEventListener {
+public class CacheManager<C> implements ICacheEventListener, ILocalSnapshotSource {
 
     private static final Logger logger = LoggerFactory.getLogger(CacheManager.class);
 
-    private static final String PATTERN_CACHE_NAME = "[a-zA-Z]+[a-zA-Z_0-9\\-]";
+    private static final String PATTERN_CACHE_NAME = "[a-zA-Z]+[a-zA-Z_0-9\\-]*";
     private static final Object CACHE_UNREADY = new Object();
 
     public static class CacheManagerBuilder<C> {
@@ -35,12 +44,18 @@ public class CacheManager<C> implements ICacheEventListener {
         private ICacheEventBus eventBus;
         private ICacheSnapshotPersister snapshotPersister;
         private boolean devMode;
+        private boolean asyncRebuild;
+        private long maxStaleness;
+        private Executor rebuildExecutor;
+        private boolean liveCheckpoint;
+        private int fullVerifyInterval;
+        private int replayPageSize = 100;
+        private int maxReplayPageSize = 2000;
+        private Executor replayExecutor;
+        private boolean transactionOverlay;
+        private ICacheMetrics metrics = ICacheMetrics.NOOP;
 
         private CacheManagerBuilder(String cacheName, ICacheSupport<C> support, CacheManagerConfiguration defaultConfig) {
-            if (!Pattern.compile(PATTERN_CACHE_NAME).matcher(cacheName).matches()) {
-                throw new IllegalArgumentException("Illegal cache name: " + cacheName);
-            }
-
             if (cacheName.length() > 40) {
                 throw new IllegalArgumentException("The cache name could not exceed 40 characters: " + cacheName);
             }
@@ -64,6 +79,32 @@ public class CacheManager<C> implements ICacheEventListener {
                 }
 
                 this.devMode = defaultConfig.isDevMode();
+                this.asyncRebuild = defaultConfig.isAsyncRebuild();
+                this.maxStaleness = defaultConfig.getMaxStaleness();
+                this.rebuildExecutor = defaultConfig.getRebuildExecutor();
+                if (support instanceof IVersionedCacheSupport) {
+                    this.liveCheckpoint = defaultConfig.isLiveCheckpoint();
+                }
+
+                this.fullVerifyInterval = defaultConfig.getFullVerifyInterval();
+
+                if (defaultConfig.getReplayPageSize() > 0) {
+                    this.replayPageSize = defaultConfig.getReplayPageSize();
+                }
+
+                if (defaultConfig.getMaxReplayPageSize() > 0) {
+                    this.maxReplayPageSize = defaultConfig.getMaxReplayPageSize();
+                }
+
+                this.replayExecutor = defaultConfig.getReplayExecutor();
+
+                if (support instanceof IVersionedCacheSupport) {
+                    this.transactionOverlay = defaultConfig.isTransactionOverlay();
+                }
+
+                if (defaultConfig.getMetrics() != null) {
+                    this.metrics = defaultConfig.getMetrics();
+                }
             }
         }
 
@@ -91,6 +132,83 @@ public class CacheManager<C> implements ICacheEventListener {
             return this;
         }
 
+        /**
+         * 开启后，FLUSH事件或摘要不匹配时不再清空缓存，而是继续提供旧缓存，同时在后台重建新缓存，重建完成后原子替换。
+         */
+        public CacheManagerBuilder<C> asyncRebuild(boolean asyncRebuild) {
+            this.asyncRebuild = asyncRebuild;
+            return this;
+        }
+
+        /**
+         * 后台重建期间旧缓存允许提供服务的最长时间（毫秒），超时后读线程将阻塞等待重建完成；小于等于0表示不限制。
+         */
+        public CacheManagerBuilder<C> maxStaleness(long maxStaleness) {
+            this.maxStaleness = maxStaleness;
+            return this;
+        }
+
+        public CacheManagerBuilder<C> rebuildExecutor(Executor rebuildExecutor) {
+            this.rebuildExecutor = rebuildExecutor;
+            return this;
+        }
+
+        /**
+         * 开启后，本节点缓存已是最新时直接基于内存中的缓存创建检查点，不再调用initCache(true)
+         */
+        public CacheManagerBuilder<C> liveCheckpoint(boolean liveCheckpoint) {
+            if (liveCheckpoint && !(support instanceof IVersionedCacheSupport)) {
+                throw new IllegalArgumentException("IVersionedCacheSupport required");
+            }
+
+            this.liveCheckpoint = liveCheckpoint;
+            return this;
+        }
+
+        /**
+         * liveCheckpoint模式下每隔多少次检查点从数据源完整校验一次，小于等于0表示从不完整校验
+         */
+        public CacheManagerBuilder<C> fullVerifyInterval(int fullVerifyInterval) {
+            this.fullVerifyInterval = fullVerifyInterval;
+            return this;
+        }
+
+        /**
+         * 追赶事件时的初始页大小，连续满页时翻倍直到maxReplayPageSize
+         */
+        public CacheManagerBuilder<C> replayPageSize(int replayPageSize, int maxReplayPageSize) {
+            this.replayPageSize = replayPageSize;
+            this.maxReplayPageSize = maxReplayPageSize;
+            return this;
+        }
+
+        /**
+         * 用于预取下一页事件的线程池，为null时不预取。事务中追赶事件时不预取；线程池拒绝任务时同步查询
+         */
+        public CacheManagerBuilder<C> replayExecutor(Executor replayExecutor) {
+            this.replayExecutor = replayExecutor;
+            return this;
+        }
+
+        /**
+         * 开启后，事务内调用flushCache不再在事务内从数据源重建缓存，事务看到的是共享缓存加上本事务内通过updateCache提交的更新。
+         * 警告：flushCache之前直接修改数据源、未通过updateCache表达的变更在事务内不可见，事务提交后各节点照常重建缓存。
+         * 事务内视图在共享缓存的副本上构建，仅支持IVersionedCacheSupport。
+         */
+        public CacheManagerBuilder<C> transactionOverlay(boolean transactionOverlay) {
+            if (transactionOverlay && !(support instanceof IVersionedCacheSupport)) {
+                throw new IllegalArgumentException("IVersionedCacheSupport required");
+            }
+
+            this.transactionOverlay = transactionOverlay;
+            return this;
+        }
+
+        public CacheManagerBuilder<C> metrics(ICacheMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
         public CacheManager<C> build() {
             if (eventStore == null) {
                 throw new IllegalStateException("eventStore required");
@@ -106,10 +224,35 @@ public class CacheManager<C> implements ICacheEventListener {
                 }
             }
 
-            CacheManager<C> cm = new CacheManager<>(cacheName,
-                    support, eventStore, eventBus, snapshotPersister, devMode);
+            if (asyncRebuild && rebuildExecutor == null) {
+                throw new IllegalStateException("rebuildExecutor required");
+            }
+
+            if (metrics == null) {
+                throw new IllegalStateException("metrics required");
+            }
+
+            if (replayPageSize <= 0) {
+                throw new IllegalStateException("replayPageSize must be positive");
+            }
+
+            CacheManager<C> cm = new CacheManager<>(cacheName, support, eventStore, eventBus,
+                    snapshotPersister, devMode, asyncRebuild, maxStaleness, rebuildExecutor,
+                    liveCheckpoint, fullVerifyInterval, replayPageSize, maxReplayPageSize, replayExecutor,
+                    transactionOverlay, metrics);
 
             eventBus.addEventListener(cacheName, cm);
+            if (snapshotPersister instanceof LocalCacheSnapshotPersister) {
+                ((LocalCacheSnapshotPersister) snapshotPersister).addLocalSnapshotSource(cm);
+            }
+
+            metrics.registerCheckpointLag(cacheName, new Supplier<Number>() {
+                @Override
+                public Number get() {
+                    return cm.getCheckpointLag();
+                }
+            });
+
             return cm;
         }
 
@@ -119,9 +262,28 @@ public class CacheManager<C> implements ICacheEventListener {
                                                         ICacheSupport<C> support,
                                                         CacheManagerConfiguration defaultConfig) {
 
+        checkCacheName(cacheName);
         return new CacheManagerBuilder<C>(cacheName, support, defaultConfig);
     }
 
+    /**
+     * 分区的缓存名为 cacheName.partition，普通缓存名中不能包含'.'，因此不会与普通缓存名冲突
+     */
+    static <C> CacheManagerBuilder<C> newPartitionBuilder(String cacheName,
+                                                          String partition,
+                                                          ICacheSupport<C> support,
+                                                          CacheManagerConfiguration defaultConfig) {
+
+        checkCacheName(cacheName);
+        return new CacheManagerBuilder<C>(cacheName + "." + partition, support, defaultConfig);
+    }
+
+    private static void checkCacheName(String cacheName) {
+        if (!Pattern.compile(PATTERN_CACHE_NAME).matcher(cacheName).matches()) {
+            throw new IllegalArgumentException("Illegal cache name: " + cacheName);
+        }
+    }
+
     public static <C> CacheManagerBuilder<C> newBuilder(String cacheName,
                                                         ICacheSupport<C> support) {
 
@@ -130,9 +292,18 @@ public class CacheManager<C> implements ICacheEventListener {
 
     @Getter
     private static class CacheInfo<C> {
-        private final C cache;
+        // 多版本模式下每次更新发布一个新版本
+        private volatile C cache;
         private Long eventId;
         private String digest;
+        private long version;
+
+        // 非0表示缓存已过期，正在后台重建
+        private volatile long staleTime;
+
+        // 每个缓存独立的事件序号：seq为已连续应用的最大序号，aheadSeqs为已应用但尚不连续的序号（本节点先行应用或乱序到达）
+        private Long seq;
+        private final TreeSet<Long> aheadSeqs = new TreeSet<>();
 
         public CacheInfo(C cache, Long eventId, String digest) {
             this.cache = cache;
@@ -144,6 +315,10 @@ public class CacheManager<C> implements ICacheEventListener {
             this(cache, eventId, null);
         }
 
+        public void setCache(C cache) {
+            this.cache = cache;
+        }
+
         public void setEventId(Long eventId) {
             this.eventId = eventId;
         }
@@ -151,6 +326,76 @@ public class CacheManager<C> implements ICacheEventListener {
         public void setDigest(String digest) {
             this.digest = digest;
         }
+
+        public void setVersion(long version) {
+            this.version = version;
+        }
+
+        public void setSeq(Long seq) {
+            this.seq = seq;
+            this.aheadSeqs.clear();
+        }
+
+        public boolean isApplied(long s) {
+            return seq != null && (s <= seq || aheadSeqs.contains(s));
+        }
+
+        public void markApplied(Long s) {
+            if (s == null) {
+                return;
+            }
+
+            if (seq == null) {
+                seq = s;
+            } else if (s > seq) {
+                aheadSeqs.add(s);
+                while (aheadSeqs.remove(seq + 1)) {
+                    seq++;
+                }
+            }
+        }
+
+        public void unmarkApplied(Long s) {
+            if (s == null || seq == null) {
+                return;
+            }
+
+            aheadSeqs.remove(s);
+            if (seq >= s) {
+                seq = s - 1;
+            }
+        }
+
+        public boolean isStale() {
+            return staleTime != 0;
+        }
+
+        public void markStale(long staleTime) {
+            if (this.staleTime == 0) {
+                this.staleTime = staleTime;
+            }
+        }
+
+        public boolean isExpired(long maxStaleness) {
+            long t = staleTime;
+            return t != 0 && maxStaleness > 0 && System.currentTimeMillis() - t > maxStaleness;
+        }
+    }
+
+    /**
+     * overlay模式下事务内刷新缓存后事务看到的缓存：共享缓存加上本事务的更新
+     */
+    private static class TransactionOverlay<C> {
+        // 刷新之后本事务内的更新，按顺序
+        private final List<Object> updates = new ArrayList<>();
+
+        // updates中从appliedFrom开始的更新已先行应用到该共享缓存上，为null表示没有应用到当前的共享缓存
+        private CacheInfo<C> appliedTo;
+        private int appliedFrom;
+
+        // 共享缓存不包含本事务的更新时，物化的事务内视图及其基于的共享缓存
+        private C view;
+        private CacheInfo<C> viewBase;
     }
 
     private final String id = GUID.get();
@@ -160,6 +405,29 @@ public class CacheManager<C> implements ICacheEventListener {
     private final ICacheEventBus eventBus;
     private final ICacheSnapshotPersister snapshotPersister;
     private final boolean devMode;
+    private final boolean asyncRebuild;
+    private final long maxStaleness;
+    private final Executor rebuildExecutor;
+    private final boolean liveCheckpoint;
+    private final int fullVerifyInterval;
+    private final AtomicInteger checkpoints = new AtomicInteger();
+    private final int replayPageSize;
+    private final int maxReplayPageSize;
+    private final Executor replayExecutor;
+    private final boolean transactionOverlay;
+    private final ICacheMetrics metrics;
+
+    // 每次缓存失效递增，用于判断重建得到的缓存是否已包含最近一次失效之前的数据
+    private final AtomicLong invalidations = new AtomicLong();
+
+    // 持有本缓存事务内版本（见flushCache）且尚未结束的事务数，为0时getCache无需查找事务上下文
+    private final AtomicInteger transactionCaches = new AtomicInteger();
+
+    // 已将更新先行应用到共享缓存但尚未结束的事务数，不为0时共享缓存可能包含将被回滚的数据
+    private final AtomicInteger uncommittedTransactions = new AtomicInteger();
+
+    // 最近一次收到的检查点的eventId，用于度量缓存新鲜度
+    private volatile Long lastCheckpointId;
 
     // volatile
     private volatile CacheInfo cacheInfo;
@@ -169,7 +437,17 @@ public class CacheManager<C> implements ICacheEventListener {
                          ICacheEventStore eventStore,
                          ICacheEventBus eventBus,
                          ICacheSnapshotPersister snapshotPersister,
-                         boolean devMode) {
+                         boolean devMode,
+                         boolean asyncRebuild,
+                         long maxStaleness,
+                         Executor rebuildExecutor,
+                         boolean liveCheckpoint,
+                         int fullVerifyInterval,
+                         int replayPageSize,
+                         int maxReplayPageSize,
+                         Executor replayExecutor,
+                         boolean transactionOverlay,
+                         ICacheMetrics metrics) {
 
         this.cacheName = cacheName;
         this.support = support;
@@ -177,17 +455,86 @@ public class CacheManager<C> implements ICacheEventListener {
         this.eventBus = eventBus;
         this.snapshotPersister = snapshotPersister;
         this.devMode = devMode;
+        this.asyncRebuild = asyncRebuild;
+        this.maxStaleness = maxStaleness;
+        this.rebuildExecutor = rebuildExecutor;
+        this.liveCheckpoint = liveCheckpoint;
+        this.fullVerifyInterval = fullVerifyInterval;
+        this.replayPageSize = replayPageSize;
+        this.maxReplayPageSize = maxReplayPageSize;
+        this.replayExecutor = replayExecutor;
+        this.transactionOverlay = transactionOverlay;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 使当前缓存失效。异步重建模式下旧缓存继续提供服务，直到后台重建完成或超过maxStaleness。
+     */
+    private void invalidateCache(String reason) {
+        metrics.recordInvalidation(cacheName, reason);
+        long seq = invalidations.incrementAndGet();
+
+        CacheInfo<C> ci = cacheInfo;
+        if (!asyncRebuild || ci == null) {
+            cacheInfo = null;
+            return;
+        }
+
+        ci.markStale(System.currentTimeMillis());
+        rebuildExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                rebuildCache(seq);
+            }
+        });
+    }
+
+    private void rebuildCache(long seq) {
+        synchronized (this) {
+            CacheInfo<C> ci = cacheInfo;
+            if (ci == null || ci.getVersion() >= seq) {
+                return;
+            }
+
+            CacheInfo<C> newCi;
+            try {
+                newCi = buildCache();
+            } catch (Exception e) {
+                logger.error("Failed to rebuild cache: " + cacheName, e);
+                cacheInfo = null;
+                return;
+            }
+
+            // 重建期间又发生了失效，新缓存仍视为过期，由排队的重建任务继续处理
+            if (newCi.getVersion() != invalidations.get()) {
+                newCi.markStale(ci.getStaleTime());
+            }
+
+            cacheInfo = newCi;
+        }
     }
 
     @Override
     public void handle(CacheEvent e) {
+        Object payload = e.getPayload();
+        if (payload instanceof Checkpoint) {
+            Long checkpointId = ((Checkpoint) payload).getEventId();
+            if (checkpointId != null && (lastCheckpointId == null || checkpointId > lastCheckpointId)) {
+                lastCheckpointId = checkpointId;
+            }
+        }
+
         CacheInfo<C> ci = cacheInfo;
         if (ci == null) {
             return;
         }
 
-        Object payload = e.getPayload();
         if (payload instanceof Checkpoint) {
+            // 缓存正在后台重建，无需校验
+            if (ci.isStale()) {
+                return;
+            }
+
             Checkpoint checkpoint = (Checkpoint) payload;
 
             if (Objects.equals(checkpoint.getEventId(), ci.getEventId())
@@ -196,13 +543,13 @@ public class CacheManager<C> implements ICacheEventListener {
                 synchronized (ci) {
                     String digest = ci.getDigest();
                     if (digest == null) {
-                        digest = support.digestCache(ci.getCache());
+                        digest = digestCache(ci.getCache());
                         ci.setDigest(digest);
                     }
 
                     if (!Objects.equals(digest, checkpoint.getDigest())) {
                         logger.warn("Unmatched digest, cache: " + e.getCacheName());
-                        cacheInfo = null;
+                        invalidateCache(ICacheMetrics.REASON_DIGEST_MISMATCH);
                     } else if (!Objects.equals(ci.getEventId(), checkpoint.getEventId())){
                         ci.setEventId(checkpoint.getEventId());
                     }
@@ -217,126 +564,434 @@ public class CacheManager<C> implements ICacheEventListener {
             }
 
             if (eventStore.detectsFlushAfter(cacheName, afterId)) {
-                cacheInfo = null;
+                invalidateCache(ICacheMetrics.REASON_FLUSH);
                 return;
             }
 
-            boolean stopped = false;
-            List<UpdateEvent> eventList;
-            do {
-                eventList = eventStore.getUpdateEventList(cacheName, afterId, 100);
-                for (UpdateEvent event : eventList) {
-                    if (checkpoint.getEventId() < event.getId()) {
-                        stopped = true;
-                        break;
+            EventReplayer replayer = newEventReplayer(afterId);
+            try {
+                List<UpdateEvent> eventList;
+                while (!(eventList = replayer.nextPage()).isEmpty()) {
+                    int n = 0;
+                    while (n < eventList.size() && eventList.get(n).getId() <= checkpoint.getEventId()) {
+                        n++;
                     }
 
-                    synchronized (ci) {
-                        support.updateCache(ci.getCache(), event.getData());
-                        ci.setEventId(event.getId());
-                        ci.setDigest(null);
+                    applyEvents(ci, eventList.subList(0, n));
+                    if (n < eventList.size()) {
+                        break;
                     }
-
-                    afterId = event.getId();
                 }
-            } while (!stopped && eventList.size() > 0);
+            } finally {
+                replayer.close();
+            }
         } else {
             if (id.equals(e.getManagerId())) {
                 return;
             }
 
+            if (payload instanceof UpdateEventBatch) {
+                List<UpdateEvent> events = ((UpdateEventBatch) payload).getEvents();
+                if (!fillGap(ci, events.get(0).getSeq())) {
+                    return;
+                }
+
+                applyEvents(ci, events);
+                recordReplicationLag(e);
+                return;
+            }
+
             UpdateEvent event = (UpdateEvent) payload;
 
             if (UpdateMode.FLUSH.equals(event.getUpdateMode())) {
-                cacheInfo = null;
+                invalidateCache(ICacheMetrics.REASON_FLUSH);
+                return;
+            }
+
+            if (fillGap(ci, event.getSeq())) {
+                applyEvents(ci, Collections.singletonList(event));
+                recordReplicationLag(e);
+            }
+        }
+    }
+
+    private void recordReplicationLag(CacheEvent e) {
+        if (e.getPublishTime() != null) {
+            long lag = Math.max(0L, System.currentTimeMillis() - e.getPublishTime());
+            metrics.recordReplicationLag(cacheName, TimeUnit.MILLISECONDS.toNanos(lag));
+        }
+    }
+
+    /**
+     * 本节点缓存的eventId落后于最近一次收到的检查点的差值（事件ID由事件存储分配，不一定连续，因此不等于事件数），
+     * 缓存未构建或尚未收到检查点时返回NaN。正常情况下检查点到达时即追赶完成，持续大于0说明本节点未能跟上。
+     */
+    public double getCheckpointLag() {
+        CacheInfo<C> ci = cacheInfo;
+        Long checkpointId = lastCheckpointId;
+        if (ci == null || checkpointId == null) {
+            return Double.NaN;
+        }
+
+        Long eventId = ci.getEventId();
+        return Math.max(0L, checkpointId - (eventId == null ? 0L : eventId));
+    }
+
+    /**
+     * 按序应用一组事件，多版本模式下整组在同一个副本上应用后一次发布，避免每个事件都复制一次缓存
+     */
+    private void applyEvents(CacheInfo<C> ci, List<UpdateEvent> events) {
+        int count;
+        long nanos;
+        synchronized (ci) {
+            List<Object> updates = new ArrayList<>(events.size());
+            UpdateEvent last = null;
+            for (UpdateEvent event : events) {
+                // 已通过补齐或本节点先行应用，忽略重复事件
+                if (event.getSeq() == null || !ci.isApplied(event.getSeq())) {
+                    updates.add(event.getData());
+                    last = event;
+                }
+            }
+
+            if (updates.isEmpty()) {
                 return;
             }
 
-            synchronized (ci) {
-                support.updateCache(ci.getCache(), event.getData());
-                ci.setEventId(event.getId());
-                ci.setDigest(null);
+            long start = System.nanoTime();
+            updateCacheInfo(ci, updates);
+            nanos = System.nanoTime() - start;
+            count = updates.size();
+            ci.setEventId(last.getId());
+            ci.setDigest(null);
+            for (UpdateEvent event : events) {
+                ci.markApplied(event.getSeq());
             }
         }
+
+        // 度量在锁外记录，不占用持锁时间
+        metrics.recordEventsApplied(cacheName, count, nanos);
+    }
+
+    /**
+     * 根据缓存序号检测在seq之前是否遗漏了事件（例如消费者重启期间），若有则立即按序号从事件存储补齐，
+     * 不必等到下一个检查点。返回false表示无法补齐，缓存已失效。
+     */
+    private boolean fillGap(CacheInfo<C> ci, Long seq) {
+        Long afterSeq;
+        synchronized (ci) {
+            afterSeq = ci.getSeq();
+        }
+
+        if (seq == null || afterSeq == null || seq <= afterSeq + 1) {
+            return true;
+        }
+
+        logger.warn("Missing cache events, cache: " + cacheName + ", seq: " + (afterSeq + 1) + "-" + (seq - 1));
+
+        List<UpdateEvent> eventList;
+        do {
+            int limit = (int) Math.min(seq - 1 - afterSeq, 100L);
+            eventList = eventStore.getUpdateEventListBySeq(cacheName, afterSeq, limit);
+            List<UpdateEvent> missing = new ArrayList<>(eventList.size());
+            for (UpdateEvent event : eventList) {
+                if (event.getSeq() >= seq) {
+                    break;
+                }
+
+                if (UpdateMode.FLUSH.equals(event.getUpdateMode())) {
+                    invalidateCache(ICacheMetrics.REASON_FLUSH);
+                    return false;
+                }
+
+                missing.add(event);
+            }
+
+            if (missing.isEmpty()) {
+                break;
+            }
+
+            applyEvents(ci, missing);
+            afterSeq = missing.get(missing.size() - 1).getSeq();
+        } while (afterSeq < seq - 1);
+
+        synchronized (ci) {
+            if (ci.getSeq() == null || ci.getSeq() < seq - 1) {
+                logger.warn("Failed to fill missing cache events, cache: " + cacheName);
+                invalidateCache(ICacheMetrics.REASON_MISSING_EVENTS);
+                return false;
+            }
+        }
+
+        return true;
     }
 
     public C getCache() {
-        TransactionContext tc = TransactionContext.get();
-        if (tc != null) {
-            Object c = tc.getCache(cacheName);
+        // 快速路径：没有事务持有本缓存的事务内版本时，不查找事务上下文，也不会为只读的事务注册事务上下文
+        if (transactionCaches.get() != 0) {
+            C c = getTransactionCache();
             if (c != null) {
-                if (CACHE_UNREADY == c) {
-                    c = support.initCache(false);
-                    tc.setCache(cacheName, c);
-                }
+                return c;
+            }
+        }
+
+        return getCacheInfo().getCache();
+    }
+
+    private C getTransactionCache() {
+        TransactionContext tc = TransactionContext.current();
+        if (tc == null) {
+            return null;
+        }
 
-                return (C) c;
+        Object c = tc.getCache(cacheName);
+        if (c instanceof TransactionOverlay) {
+            return getOverlayCache((TransactionOverlay<C>) c);
+        }
+
+        if (CACHE_UNREADY == c) {
+            c = support.initCache(false);
+            tc.setCache(cacheName, c);
+        }
+
+        return (C) c;
+    }
+
+    /**
+     * 共享缓存已包含本事务的全部更新时直接返回共享缓存；不包含本事务的任何更新时在共享缓存的副本上按顺序重放。
+     * 期间缓存被重建、重建后的共享缓存只包含本事务后来的更新时，无法在副本上按原顺序重放，只能在事务内从数据源重建
+     * （数据源在事务内已包含本事务的变更），这种情况只在事务期间发生重建时出现。
+     */
+    private C getOverlayCache(TransactionOverlay<C> overlay) {
+        CacheInfo<C> ci = getCacheInfo();
+        boolean applied = overlay.appliedTo == ci;
+        if (overlay.updates.isEmpty() || (applied && overlay.appliedFrom == 0)) {
+            return ci.getCache();
+        }
+
+        if (overlay.view == null || overlay.viewBase != ci) {
+            C view;
+            if (applied) {
+                view = support.initCache(false);
+            } else {
+                view = ((IVersionedCacheSupport<C>) support).copyCache(ci.getCache());
+                applyUpdates(view, overlay.updates);
             }
+
+            overlay.view = view;
+            overlay.viewBase = ci;
         }
 
-        CacheInfo<C> ci = cacheInfo;
+        return overlay.view;
+    }
+
+    private void addOverlayUpdates(TransactionOverlay<C> overlay, List<Object> updates, CacheInfo<C> ci) {
         if (ci == null) {
+            overlay.appliedTo = null;
+        } else if (overlay.appliedTo != ci) {
+            overlay.appliedTo = ci;
+            overlay.appliedFrom = overlay.updates.size();
+        }
+
+        overlay.updates.addAll(updates);
+        if (overlay.view != null) {
+            applyUpdates(overlay.view, updates);
+        }
+    }
+
+    /**
+     * 当前事务开始持有本缓存的事务内版本，事务结束时释放。释放不作为普通回调，其它回调抛出异常时也会执行
+     */
+    private void holdTransactionCache(TransactionContext tc) {
+        transactionCaches.incrementAndGet();
+        tc.addCompletionAction(new Runnable() {
+            @Override
+            public void run() {
+                transactionCaches.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * 当前事务开始持有已应用到共享缓存的未提交更新，事务结束（回滚已撤销更新）时释放，每个事务只计一次
+     */
+    private void holdUncommittedUpdates(TransactionContext tc) {
+        boolean added = tc.addCompletionAction(uncommittedTransactions, new Runnable() {
+            @Override
+            public void run() {
+                uncommittedTransactions.decrementAndGet();
+            }
+        });
+
+        if (added) {
+            uncommittedTransactions.incrementAndGet();
+        }
+    }
+
+    /**
+     * 预热缓存：从快照恢复并追赶后续事件，已构建则直接返回
+     */
+    public void warmUp() {
+        getCacheInfo();
+    }
+
+    private CacheInfo<C> getCacheInfo() {
+        CacheInfo<C> ci = cacheInfo;
+        if (ci == null || ci.isExpired(maxStaleness)) {
             synchronized (this) {
                 ci = cacheInfo;
-                if (ci == null) {
+                if (ci == null || ci.isExpired(maxStaleness)) {
                     ci = buildCache();
                     cacheInfo = ci;
                 }
             }
         }
 
-        return ci.getCache();
+        return ci;
     }
 
     private CacheInfo buildCache() {
+        long start = System.nanoTime();
+        long version = invalidations.get();
+        CacheInfo<C> ci = doBuildCache();
+        ci.setVersion(version);
+        metrics.recordBuild(cacheName, ICacheMetrics.PHASE_TOTAL, System.nanoTime() - start);
+        return ci;
+    }
+
+    private CacheInfo doBuildCache() {
         UpdateEvent lastEvent = eventStore.getLastUpdateEvent(cacheName);
         Long lastEventId = lastEvent == null ? null : lastEvent.getId();
 
         // 如果支持快照，则从最新的快照+后续事件快速恢复
         if (snapshotPersister != null) {
-            Snapshot snapshot = snapshotPersister.getLastestSnapshot(cacheName);
-            if (snapshot != null) {
-                if (!eventStore.detectsFlushAfter(cacheName, snapshot.getEventId())) {
-                    InputStream input = snapshotPersister.getInputStream(snapshot);
-                    C cache;
-                    try {
-                        cache = ((ISnapshotableCacheSupport<C>) support).deserializeCache(input);
-                    } finally {
-                        if (input != null) {
-                            try {
-                                input.close();
-                            } catch (IOException _) {
-                            }
-                        }
-                    }
+            Snapshot snapshot = snapshotPersister.getRestorableSnapshot(cacheName);
+            C cache = null;
+            if (snapshot != null && !eventStore.detectsFlushAfter(cacheName, snapshot.getEventId())) {
+                cache = restoreSnapshot(snapshot);
+                if (!verifyLocalSnapshot(snapshot, cache)) {
+                    // 本地快照已丢弃，改用远端快照
+                    snapshot = snapshotPersister.getRestorableSnapshot(cacheName);
+                    cache = snapshot == null || eventStore.detectsFlushAfter(cacheName, snapshot.getEventId())
+                            ? null : restoreSnapshot(snapshot);
+                }
+            }
 
-                    if (Objects.equals(lastEventId, snapshot.getEventId())) {
-                        return new CacheInfo(cache, snapshot.getEventId(), snapshot.getDigest());
-                    } else if (lastEventId == null) {
-                        return new CacheInfo(cache, snapshot.getEventId());
-                    }
+            if (cache != null) {
+                if (Objects.equals(lastEventId, snapshot.getEventId())) {
+                    CacheInfo<C> ci = new CacheInfo(cache, snapshot.getEventId(), snapshot.getDigest());
+                    ci.setSeq(lastEvent == null ? null : lastEvent.getSeq());
+                    return ci;
+                } else if (lastEventId == null) {
+                    return new CacheInfo(cache, snapshot.getEventId());
+                }
 
-                    Long afterId = snapshot.getEventId();
+                long start = System.nanoTime();
+                Long afterId = snapshot.getEventId();
+                Long afterSeq = null;
+                EventReplayer replayer = newEventReplayer(afterId);
+                try {
                     List<UpdateEvent> eventList;
-                    do {
-                        eventList = eventStore.getUpdateEventList(cacheName, afterId, 100);
+                    replay:
+                    while (!(eventList = replayer.nextPage()).isEmpty()) {
                         for (UpdateEvent event : eventList) {
                             if (lastEventId < event.getId()) {
-                                return new CacheInfo(cache, afterId);
+                                break replay;
                             }
 
                             support.updateCache(cache, event.getData());
                             afterId = event.getId();
+                            afterSeq = event.getSeq();
                         }
-                    } while (eventList.size() > 0);
-
-                    return new CacheInfo(cache, afterId);
+                    }
+                } finally {
+                    replayer.close();
                 }
+
+                metrics.recordBuild(cacheName, ICacheMetrics.PHASE_REPLAY, System.nanoTime() - start);
+                CacheInfo<C> ci = new CacheInfo(cache, afterId);
+                ci.setSeq(afterSeq);
+                return ci;
             }
         }
 
+        long start = System.nanoTime();
         C cache = support.initCache(false);
-        return new CacheInfo(cache, lastEventId);
+        metrics.recordBuild(cacheName, ICacheMetrics.PHASE_INIT, System.nanoTime() - start);
+        CacheInfo<C> ci = new CacheInfo(cache, lastEventId);
+        ci.setSeq(lastEvent == null ? null : lastEvent.getSeq());
+        return ci;
+    }
+
+    /**
+     * 本地快照可能比远端快照更新或没有对应的远端快照，恢复后按摘要校验，不一致时丢弃本地快照并返回false
+     */
+    private boolean verifyLocalSnapshot(Snapshot snapshot, C cache) {
+        if (!(snapshotPersister instanceof LocalCacheSnapshotPersister)) {
+            return true;
+        }
+
+        LocalCacheSnapshotPersister persister = (LocalCacheSnapshotPersister) snapshotPersister;
+        if (!persister.isLocalSnapshot(snapshot) || Objects.equals(digestCache(cache), snapshot.getDigest())) {
+            return true;
+        }
+
+        logger.warn("Unmatched digest of local snapshot " + snapshot.getId() + ", fall back to remote snapshot, cache: "
+                + cacheName);
+        persister.discardLocalSnapshot(cacheName);
+        return false;
+    }
+
+    private C restoreSnapshot(Snapshot snapshot) {
+        // 快照在本地有完整副本时直接映射，不逐个对象反序列化
+        if (support instanceof IMappableCacheSupport) {
+            File file = snapshotPersister.getLocalFile(snapshot);
+            if (file != null) {
+                try {
+                    long start = System.nanoTime();
+                    C cache = ((IMappableCacheSupport<C>) support).mapCache(file);
+                    metrics.recordBuild(cacheName, ICacheMetrics.PHASE_MAP, System.nanoTime() - start);
+                    metrics.recordSnapshotSize(cacheName, ICacheMetrics.SNAPSHOT_RESTORE, file.length());
+                    return cache;
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Failed to map local snapshot, cache: " + cacheName, e);
+                }
+            }
+        }
+
+        // 反序列化阻塞在读取上的时间计为下载耗时，其余计为反序列化耗时
+        long start = System.nanoTime();
+        InputStream input = snapshotPersister.getInputStream(snapshot);
+        long openNanos = System.nanoTime() - start;
+        MeteredInputStream metered = new MeteredInputStream(input);
+        try {
+            C cache = ((ISnapshotableCacheSupport<C>) support).deserializeCache(metered);
+            long downloadNanos = openNanos + metered.getReadNanos();
+            metrics.recordBuild(cacheName, ICacheMetrics.PHASE_DOWNLOAD, downloadNanos);
+            metrics.recordBuild(cacheName, ICacheMetrics.PHASE_DESERIALIZE, System.nanoTime() - start - downloadNanos);
+            metrics.recordSnapshotSize(cacheName, ICacheMetrics.SNAPSHOT_RESTORE, metered.getBytes());
+            return cache;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException _) {
+                }
+            }
+        }
+    }
+
+    private EventReplayer newEventReplayer(Long afterId) {
+        return new EventReplayer(eventStore, cacheName, afterId, replayPageSize, maxReplayPageSize, replayExecutor,
+                metrics);
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public ICacheSnapshotPersister getSnapshotPersister() {
+        return snapshotPersister;
     }
 
     public void updateCache(Object update) {
@@ -345,32 +1000,67 @@ public class CacheManager<C> implements ICacheEventListener {
         }
 
         UpdateEvent event = eventStore.createUpdateEvent(cacheName, UpdateMode.UPDATE, update);
+        doUpdateCache(Collections.singletonList(update), Collections.singletonList(event), event);
+    }
+
+    /**
+     * 批量更新缓存：批量写入事件存储，在一次加锁中应用全部更新，回滚时整体回滚，并且只广播一条事件
+     */
+    public void updateCacheBatch(Collection<?> updates) {
+        if (updates == null || updates.isEmpty()) {
+            throw new IllegalArgumentException("The update objects required");
+        }
+
+        List<Object> updateList = new ArrayList<>(updates);
+        for (Object update : updateList) {
+            if (update == null) {
+                throw new IllegalArgumentException("The update object required");
+            }
+        }
+
+        List<UpdateEvent> events = eventStore.createUpdateEvents(cacheName, updateList);
+        doUpdateCache(updateList, events, new UpdateEventBatch(events));
+    }
+
+    private void doUpdateCache(List<Object> updates, List<UpdateEvent> events, Object payload) {
+        Long eventId = events.get(events.size() - 1).getId();
 
         TransactionContext tc = TransactionContext.get();
         if (tc != null) {
             C tmpCache = null;
+            TransactionOverlay<C> overlay = null;
             Object c = tc.getCache(cacheName);
-            if (c != null && CACHE_UNREADY != c) {
+            if (c instanceof TransactionOverlay) {
+                overlay = (TransactionOverlay<C>) c;
+            } else if (c != null && CACHE_UNREADY != c) {
                 tmpCache = (C) c;
             }
 
             Object tmpUndo = null;
             if (tmpCache != null) {
-                tmpUndo = support.updateCache(tmpCache, update);
+                tmpUndo = applyUpdates(tmpCache, updates);
             }
 
             Long prevEventId = null;
             CacheInfo<C> ci = cacheInfo;
             Object undo = null;
             if (ci != null) {
+                holdUncommittedUpdates(tc);
                 synchronized (ci) {
                     prevEventId = ci.getEventId();
-                    undo = support.updateCache(ci.getCache(), update);
-                    ci.setEventId(event.getId());
+                    undo = updateCacheInfo(ci, updates);
+                    ci.setEventId(eventId);
                     ci.setDigest(null);
+                    for (UpdateEvent event : events) {
+                        ci.markApplied(event.getSeq());
+                    }
                 }
             }
 
+            if (overlay != null) {
+                addOverlayUpdates(overlay, updates, ci);
+            }
+
             final C tmpCache2 = tmpCache;
             final Object tmpUndo2 = tmpUndo;
             final Object undo2 = undo;
@@ -378,19 +1068,23 @@ public class CacheManager<C> implements ICacheEventListener {
             tc.addCallback(new ITransactionCallback() {
                 @Override
                 public void commit() {
-                    eventBus.publishEvent(new CacheEvent(cacheName, event, id));
+                    publishEvent(new CacheEvent(cacheName, payload, id));
                 }
 
                 @Override
                 public void rollback() {
                     if (tmpCache2 != null) {
-                        support.rollbackCache(tmpCache2, tmpUndo2);
+                        rollbackUpdates(tmpCache2, updates, tmpUndo2);
                     }
 
                     if (ci != null) {
                         synchronized (ci) {
-                            support.rollbackCache(ci.getCache(), undo2);
+                            rollbackCacheInfo(ci, updates, undo2);
                             ci.setEventId(prevEventId2);
+                            ci.setDigest(null);
+                            for (UpdateEvent event : events) {
+                                ci.unmarkApplied(event.getSeq());
+                            }
                         }
                     }
                 }
@@ -399,11 +1093,57 @@ public class CacheManager<C> implements ICacheEventListener {
             CacheInfo<C> ci = cacheInfo;
             if (ci != null) {
                 synchronized (ci) {
-                    support.updateCache(ci.getCache(), update);
+                    updateCacheInfo(ci, updates);
+                    ci.setEventId(eventId);
+                    ci.setDigest(null);
+                    for (UpdateEvent event : events) {
+                        ci.markApplied(event.getSeq());
+                    }
                 }
             }
 
-            eventBus.publishEvent(new CacheEvent(cacheName, event, id));
+            publishEvent(new CacheEvent(cacheName, payload, id));
+        }
+    }
+
+    /**
+     * 更新节点上的缓存，调用方需持有ci的锁。多版本模式下在副本上更新后再发布，读者不会看到更新了一半的缓存
+     */
+    private Object updateCacheInfo(CacheInfo<C> ci, List<Object> updates) {
+        if (support instanceof IVersionedCacheSupport) {
+            C copy = ((IVersionedCacheSupport<C>) support).copyCache(ci.getCache());
+            Object undo = applyUpdates(copy, updates);
+            ci.setCache(copy);
+            return undo;
+        }
+
+        return applyUpdates(ci.getCache(), updates);
+    }
+
+    private void rollbackCacheInfo(CacheInfo<C> ci, List<Object> updates, Object undo) {
+        if (support instanceof IVersionedCacheSupport) {
+            C copy = ((IVersionedCacheSupport<C>) support).copyCache(ci.getCache());
+            rollbackUpdates(copy, updates, undo);
+            ci.setCache(copy);
+            return;
+        }
+
+        rollbackUpdates(ci.getCache(), updates, undo);
+    }
+
+    private Object applyUpdates(C cache, List<Object> updates) {
+        if (updates.size() == 1) {
+            return support.updateCache(cache, updates.get(0));
+        }
+
+        return support.updateCacheBatch(cache, updates);
+    }
+
+    private void rollbackUpdates(C cache, List<Object> updates, Object undo) {
+        if (updates.size() == 1) {
+            support.rollbackCache(cache, undo);
+        } else {
+            support.rollbackCacheBatch(cache, undo);
         }
     }
 
@@ -426,7 +1166,16 @@ public class CacheManager<C> implements ICacheEventListener {
         }
 
         Object c = tc.getCache(cacheName);
-        if (CACHE_UNREADY != c) {
+        if (c == null) {
+            holdTransactionCache(tc);
+        }
+
+        if (transactionOverlay) {
+            // 重复刷新沿用已有的overlay，不会导致重建
+            if (!(c instanceof TransactionOverlay)) {
+                tc.setCache(cacheName, new TransactionOverlay<C>());
+            }
+        } else if (CACHE_UNREADY != c) {
             tc.setCache(cacheName, CACHE_UNREADY);
         }
 
@@ -442,27 +1191,77 @@ public class CacheManager<C> implements ICacheEventListener {
         // 如果支持快照，则打个快照再广播事件
         if (snapshotPersister != null) {
             C cache = support.initCache(true);
-            String digest = support.digestCache(cache);
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
-            ((ISnapshotableCacheSupport<C>) support).serializeCache(cache, output);
-            snapshotPersister.createSnapshot(cacheName, event,
-                    new ByteArrayInputStream(output.toByteArray()), digest);
+            String digest = digestCache(cache);
+            SnapshotPipe.createSnapshot(snapshotPersister, (ISnapshotableCacheSupport<C>) support,
+                    cacheName, event, cache, digest, metrics);
         }
 
-        cacheInfo = null;
-        eventBus.publishEvent(new CacheEvent(cacheName, event, id));
+        invalidateCache(ICacheMetrics.REASON_FLUSH);
+        publishEvent(new CacheEvent(cacheName, event, id));
     }
 
+    private String digestCache(C cache) {
+        if (support instanceof IIncrementalDigestCacheSupport) {
+            return ((IIncrementalDigestCacheSupport<C>) support).currentDigest(cache);
+        }
+
+        return support.digestCache(cache);
+    }
+
+    /**
+     * 开启liveCheckpoint时，若本节点缓存已是最新（eventId与事件存储中最后的事件一致），则直接基于内存中的缓存创建检查点，
+     * 不再从数据源重新加载；每fullVerifyInterval次检查点仍会从数据源完整加载一次，用于发现缓存与数据源的偏差。
+     * 本节点有未提交的事务内更新时，共享缓存可能包含将被回滚的数据，此时从数据源加载。
+     */
     public void createCheckpoint() {
         UpdateEvent lastEvent = eventStore.getLastUpdateEvent(cacheName);
         Long lastEventId = lastEvent == null ? null : lastEvent.getId();
 
+        if (liveCheckpoint
+                && (fullVerifyInterval <= 0 || checkpoints.incrementAndGet() % fullVerifyInterval != 0)) {
+
+            CacheInfo<C> ci = cacheInfo;
+            if (ci != null && !ci.isStale() && Objects.equals(ci.getEventId(), lastEventId)) {
+                C cache = null;
+                String digest = null;
+
+                // 锁内只取得与eventId一致的当前版本（已发布的版本不再被修改），摘要计算和快照上传都在锁外进行
+                synchronized (ci) {
+                    if (Objects.equals(ci.getEventId(), lastEventId) && uncommittedTransactions.get() == 0) {
+                        cache = ci.getCache();
+                        digest = ci.getDigest();
+                    }
+                }
+
+                if (cache != null) {
+                    if (digest == null) {
+                        digest = digestCache(cache);
+                        synchronized (ci) {
+                            if (ci.getCache() == cache) {
+                                ci.setDigest(digest);
+                            }
+                        }
+                    }
+
+                    createSnapshotIfNecessary(cache, lastEvent, digest);
+                    publishCheckpoint(lastEventId, digest);
+                    return;
+                }
+            }
+        }
+
         C cache = support.initCache(true);
-        String digest = support.digestCache(cache);
+        String digest = digestCache(cache);
 
         if (devMode) {
             logger.info("<<<<<< This is for dev mode");
 
+            if (support instanceof IIncrementalDigestCacheSupport) {
+                if (!Objects.equals(digest, support.digestCache(cache))) {
+                    logger.error("Different digests by currentDigest() and digestCache(): " + support.getClass());
+                }
+            }
+
             C cache2 = support.initCache(true);
             UpdateEvent lastEvent2 = eventStore.getLastUpdateEvent(cacheName);
             Long lastEventId2 = lastEvent2 == null ? null : lastEvent2.getId();
@@ -488,46 +1287,138 @@ public class CacheManager<C> implements ICacheEventListener {
             logger.info(">>>>>> This is for dev mode");
         }
 
-        if (snapshotPersister != null) {
-            Snapshot snapshot = snapshotPersister.getLastestSnapshot(cacheName);
-            if (snapshot == null
-                    || !Objects.equals(lastEventId, snapshot.getEventId())
-                    || !Objects.equals(digest, snapshot.getDigest())) {
-
-                ByteArrayOutputStream output = new ByteArrayOutputStream();
-                ((ISnapshotableCacheSupport<C>) support).serializeCache(cache, output);
-                byte[] bytes = output.toByteArray();
-                snapshotPersister.createSnapshot(cacheName, lastEvent, new ByteArrayInputStream(bytes), digest);
-
-                if (devMode) {
-                    logger.info("<<<<<< This is for dev mode");
-
-                    C cache2 = ((ISnapshotableCacheSupport<C>) support).deserializeCache(
-                             new ByteArrayInputStream(bytes));
-                    String digest2 = support.digestCache(cache2);
-                    if (!Objects.equals(digest, digest2)) {
-                        logger.error("The serialization and deserialization are unmatched: " + support.getClass());
-                    }
-
-                    C cache3 = ((ISnapshotableCacheSupport<C>) support).deserializeCache(
-                            new ByteArrayInputStream(bytes));
-                    String digest3 = support.digestCache(cache3);
-                    if (!Objects.equals(digest2, digest3)) {
-                        logger.error("Different digests for the same cache data built by deserializeCache(): "
-                                + support.getClass());
-                    }
-
-                    logger.info(">>>>>> This is for dev mode");
-                }
-            }
-        }
+        createSnapshotIfNecessary(cache, lastEvent, digest);
+        publishCheckpoint(lastEventId, digest);
+    }
 
+    private void publishCheckpoint(Long lastEventId, String digest) {
         Checkpoint checkpoint = new Checkpoint();
         checkpoint.setCacheName(cacheName);
         checkpoint.setTime(new Date());
         checkpoint.setEventId(lastEventId);
         checkpoint.setDigest(digest);
-        eventBus.publishEvent(new CacheEvent(cacheName, checkpoint, id));
+        publishEvent(new CacheEvent(cacheName, checkpoint, id));
+    }
+
+    private void publishEvent(CacheEvent event) {
+        event.setPublishTime(System.currentTimeMillis());
+        eventBus.publishEvent(event);
+    }
+
+    private static boolean isSnapshotNecessary(Snapshot snapshot, Long lastEventId, String digest) {
+        return snapshot == null
+                || !Objects.equals(lastEventId, snapshot.getEventId())
+                || !Objects.equals(digest, snapshot.getDigest());
+    }
+
+    private void createSnapshotIfNecessary(C cache, UpdateEvent lastEvent, String digest) {
+        Long lastEventId = lastEvent == null ? null : lastEvent.getId();
+
+        if (snapshotPersister != null
+                && isSnapshotNecessary(snapshotPersister.getLastestSnapshot(cacheName), lastEventId, digest)) {
+
+            createSnapshot(cache, lastEvent, digest);
+        }
+    }
+
+    private void createSnapshot(C cache, UpdateEvent lastEvent, String digest) {
+        if (!devMode) {
+            SnapshotPipe.createSnapshot(snapshotPersister, (ISnapshotableCacheSupport<C>) support,
+                    cacheName, lastEvent, cache, digest, metrics);
+        } else {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ((ISnapshotableCacheSupport<C>) support).serializeCache(cache, output);
+            byte[] bytes = output.toByteArray();
+            snapshotPersister.createSnapshot(cacheName, lastEvent, new ByteArrayInputStream(bytes), digest);
+            metrics.recordSnapshotSize(cacheName, ICacheMetrics.SNAPSHOT_CREATE, bytes.length);
+
+            logger.info("<<<<<< This is for dev mode");
+
+            C cache2 = ((ISnapshotableCacheSupport<C>) support).deserializeCache(
+                     new ByteArrayInputStream(bytes));
+            String digest2 = support.digestCache(cache2);
+            if (!Objects.equals(digest, digest2)) {
+                logger.error("The serialization and deserialization are unmatched: " + support.getClass());
+            }
+
+            C cache3 = ((ISnapshotableCacheSupport<C>) support).deserializeCache(
+                    new ByteArrayInputStream(bytes));
+            String digest3 = support.digestCache(cache3);
+            if (!Objects.equals(digest2, digest3)) {
+                logger.error("Different digests for the same cache data built by deserializeCache(): "
+                        + support.getClass());
+            }
+
+            logger.info(">>>>>> This is for dev mode");
+        }
+    }
+
+    /**
+     * 将本节点的缓存写入本地快照，用于重启时快速恢复，仅当快照持久化器为LocalCacheSnapshotPersister时有效。
+     * 由LocalCacheSnapshotPersister在应用停止时调用，缓存未构建或正在重建时不写入。
+     */
+    @Override
+    public boolean saveLocalSnapshot() {
+        if (!(snapshotPersister instanceof LocalCacheSnapshotPersister)
+                || !(support instanceof ISnapshotableCacheSupport)) {
+
+            return false;
+        }
+
+        CacheInfo<C> ci = cacheInfo;
+        if (ci == null || ci.isStale()) {
+            return false;
+        }
+
+        // 持有锁直到快照完成，保证快照与摘要、eventId一致
+        synchronized (ci) {
+            String digest = ci.getDigest();
+            if (digest == null) {
+                digest = digestCache(ci.getCache());
+                ci.setDigest(digest);
+            }
+
+            final C cache = ci.getCache();
+            ((LocalCacheSnapshotPersister) snapshotPersister).saveLocalSnapshot(cacheName, ci.getEventId(), digest,
+                    new LocalCacheSnapshotPersister.SnapshotWriter() {
+                        @Override
+                        public void write(OutputStream output) throws IOException {
+                            ((ISnapshotableCacheSupport<C>) support).serializeCache(cache, output);
+                        }
+                    });
+        }
+
+        return true;
+    }
+
+    /**
+     * 清理最早的保留快照之前的事件，应与createCheckpoint一样由应用定时调用（不要在事务中调用）。
+     * 仅支持快照的缓存可以清理事件，落后于清理位置的节点将重建缓存。
+     */
+    public int purgeEvents() {
+        if (snapshotPersister == null) {
+            return 0;
+        }
+
+        // 本地快照只用于本节点，以远端快照为准
+        ICacheSnapshotPersister persister = snapshotPersister instanceof LocalCacheSnapshotPersister
+                ? ((LocalCacheSnapshotPersister) snapshotPersister).getDelegate()
+                : snapshotPersister;
+
+        Snapshot snapshot = persister instanceof RollingCacheSnapshotPersister
+                ? ((RollingCacheSnapshotPersister) persister).getOldestSnapshot(cacheName)
+                : persister.getLastestSnapshot(cacheName);
+
+        if (snapshot == null || snapshot.getEventId() == null) {
+            return 0;
+        }
+
+        int n = eventStore.purgeEventsBefore(cacheName, snapshot.getEventId());
+        if (n > 0) {
+            logger.info("Purged " + n + " events before " + snapshot.getEventId() + ", cache: " + cacheName);
+        }
+
+        return n;
     }
 
 }
@@ -6,6 +6,8 @@ import com.cbcc.framework.localcache.snapshot.ICacheSnapshotPersister;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.concurrent.Executor;
+
 @Getter
 @Setter
 public class CacheManagerConfiguration {
@@ -14,5 +16,15 @@ public class CacheManagerConfiguration {
     private ICacheEventBus eventBus;
     private ICacheSnapshotPersister snapshotPersister;
     private boolean devMode;
+    private boolean asyncRebuild;
+    private long maxStaleness;
+    private Executor rebuildExecutor;
+    private boolean liveCheckpoint;
+    private int fullVerifyInterval;
+    private int replayPageSize;
+    private int maxReplayPageSize;
+    private Executor replayExecutor;
+    private boolean transactionOverlay;
+    private ICacheMetrics metrics;
 
 }
@@ -0,0 +1,24 @@
+package com.cbcc.framework.localcache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * 类路径中存在Micrometer时启用缓存度量，没有MeterRegistry时使用全局的Metrics.globalRegistry
+ */
+@ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+public class CacheMetricsAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = "localcache.metrics.enabled", havingValue = "true", matchIfMissing = true)
+    public ICacheMetrics micrometerCacheMetrics(ObjectProvider<MeterRegistry> registry) {
+        return new MicrometerCacheMetrics(registry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.cbcc.framework.localcache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * 应用启动时并行预热所有CacheManager，全部预热完成后才继续启动后续的Lifecycle（包括Web容器），
+ * 因此在Spring Boot的就绪探针（ReadinessState.ACCEPTING_TRAFFIC）生效前所有缓存都已构建完毕。
+ *
+ * 预热失败的缓存记录日志，首次getCache()时仍会按原有方式构建；超时的缓存在后台继续预热，不会被中断。
+ * 存在失败或未完成的缓存时isWarmedUp()返回false，除非配置了localcache.warmup.tolerateFailure=true；
+ * 类路径中有Actuator时该状态通过CacheWarmerHealthIndicator暴露，可加入readiness健康组作为就绪探针。
+ */
+public class CacheWarmer implements SmartLifecycle, ApplicationContextAware {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheWarmer.class);
+
+    /**
+     * 在事件总线之后、Web容器（Integer.MAX_VALUE - 1）之前启动
+     */
+    public static final int PHASE = Integer.MAX_VALUE - 1024;
+
+    @Value("${localcache.warmup.threads:4}")
+    private int threads = 4;
+
+    @Value("${localcache.warmup.timeout:600000}")
+    private long timeout = 600000L;
+
+    @Value("${localcache.warmup.tolerateFailure:false}")
+    private boolean tolerateFailure;
+
+    private ApplicationContext applicationContext;
+
+    private final Set<String> pendingCaches = new ConcurrentSkipListSet<>();
+    private final Set<String> failedCaches = new ConcurrentSkipListSet<>();
+
+    private volatile boolean warmedUp;
+    private boolean finished;
+    private volatile boolean running;
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+
+        List<CacheManager<?>> managers = new ArrayList<>();
+        for (CacheManager<?> cm : applicationContext.getBeansOfType(CacheManager.class).values()) {
+            managers.add(cm);
+        }
+
+        // 分区缓存的每个分区作为独立的任务并行预热
+        for (PartitionedCacheManager<?> pcm : applicationContext.getBeansOfType(PartitionedCacheManager.class).values()) {
+            managers.addAll(pcm.getPartitionManagers());
+        }
+
+        if (managers.isEmpty()) {
+            warmedUp = true;
+            return;
+        }
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("localcache-warmup-");
+        threadFactory.setDaemon(true);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, managers.size()), threadFactory);
+
+        final long start = System.currentTimeMillis();
+        final int total = managers.size();
+        for (CacheManager<?> cm : managers) {
+            pendingCaches.add(cm.getCacheName());
+        }
+
+        for (final CacheManager<?> cm : managers) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        cm.warmUp();
+                    } catch (Throwable e) {
+                        logger.error("Failed to warm up cache: " + cm.getCacheName(), e);
+                        failedCaches.add(cm.getCacheName());
+                    } finally {
+                        pendingCaches.remove(cm.getCacheName());
+                    }
+
+                    if (pendingCaches.isEmpty()) {
+                        finish(total, start);
+                    }
+                }
+            });
+        }
+
+        // 已提交的预热任务在超时后继续执行，线程池在全部完成后自行退出
+        executor.shutdown();
+
+        try {
+            if (executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+
+            logger.error("Timeout to warm up caches " + pendingCaches + ", continue in background");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while warming up caches " + pendingCaches + ", continue in background");
+        }
+
+        synchronized (this) {
+            if (!finished) {
+                warmedUp = tolerateFailure;
+            }
+        }
+    }
+
+    private synchronized void finish(int total, long start) {
+        if (finished) {
+            return;
+        }
+
+        finished = true;
+        long elapsed = System.currentTimeMillis() - start;
+        if (!failedCaches.isEmpty()) {
+            logger.warn("Failed to warm up " + failedCaches.size() + " of " + total + " caches in " + elapsed + "ms: "
+                    + failedCaches);
+            warmedUp = tolerateFailure;
+            return;
+        }
+
+        warmedUp = true;
+        logger.info("Warmed up " + total + " caches in " + elapsed + "ms");
+    }
+
+    /**
+     * 供就绪探针使用，所有缓存都预热成功时返回true
+     */
+    public boolean isWarmedUp() {
+        return warmedUp;
+    }
+
+    /**
+     * 超时后仍在后台预热的缓存
+     */
+    public Set<String> getPendingCaches() {
+        return Collections.unmodifiableSet(pendingCaches);
+    }
+
+    /**
+     * 预热失败的缓存
+     */
+    public Set<String> getFailedCaches() {
+        return Collections.unmodifiableSet(failedCaches);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.cbcc.framework.localcache;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+/**
+ * 缓存预热状态：预热未成功（失败或仍在后台预热）时为OUT_OF_SERVICE。
+ * 用作就绪探针时加入readiness健康组：management.endpoint.health.group.readiness.include=readinessState,localCache
+ */
+public class CacheWarmerHealthIndicator implements HealthIndicator {
+
+    private final CacheWarmer cacheWarmer;
+
+    public CacheWarmerHealthIndicator(CacheWarmer cacheWarmer) {
+        this.cacheWarmer = cacheWarmer;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = cacheWarmer.isWarmedUp() ? Health.up() : Health.outOfService();
+        return builder.withDetail("pendingCaches", cacheWarmer.getPendingCaches())
+                .withDetail("failedCaches", cacheWarmer.getFailedCaches())
+                .build();
+    }
+
+}
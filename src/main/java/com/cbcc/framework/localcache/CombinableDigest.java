@@ -0,0 +1,96 @@
+package com.cbcc.framework.localcache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 与顺序无关、可增量合并的摘要：每个条目先计算64位哈希，再累加（和、异或、计数），
+ * 添加和移除条目均为O(1)，适用于IIncrementalDigestCacheSupport。
+ *
+ * 警告：条目的字符串表示必须稳定（不能依赖Object.hashCode等与JVM相关的值）。
+ */
+public class CombinableDigest {
+
+    private long sum;
+    private long xor;
+    private long count;
+
+    public synchronized void add(String entry) {
+        add(hash(entry));
+    }
+
+    public synchronized void remove(String entry) {
+        remove(hash(entry));
+    }
+
+    public synchronized void add(long entryHash) {
+        long h = mix(entryHash);
+        sum += h;
+        xor ^= h;
+        count++;
+    }
+
+    public synchronized void remove(long entryHash) {
+        long h = mix(entryHash);
+        sum -= h;
+        xor ^= h;
+        count--;
+    }
+
+    public synchronized CombinableDigest copy() {
+        CombinableDigest copy = new CombinableDigest();
+        copy.sum = sum;
+        copy.xor = xor;
+        copy.count = count;
+        return copy;
+    }
+
+    public synchronized void clear() {
+        sum = 0L;
+        xor = 0L;
+        count = 0L;
+    }
+
+    public synchronized String getDigest() {
+        return Long.toHexString(sum) + "-" + Long.toHexString(xor) + "-" + count;
+    }
+
+    /**
+     * 64位FNV-1a哈希
+     */
+    public static long hash(String entry) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : entry.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+
+        return h;
+    }
+
+    /**
+     * 64位FNV-1a哈希，作用于buffer中position到limit之间的字节，不改变buffer的position
+     */
+    public static long hash(ByteBuffer buffer) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = buffer.position(), n = buffer.limit(); i < n; i++) {
+            h ^= (buffer.get(i) & 0xff);
+            h *= 0x100000001b3L;
+        }
+
+        return h;
+    }
+
+    /**
+     * MurmurHash3的fmix64，使累加前的哈希值分布均匀
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
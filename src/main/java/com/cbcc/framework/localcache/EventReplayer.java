@@ -0,0 +1,117 @@
+package com.cbcc.framework.localcache;
+
+import com.cbcc.framework.localcache.event.UpdateEvent;
+import com.cbcc.framework.localcache.event.store.ICacheEventStore;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 分页追赶事件：应用当前页的同时在后台线程预取下一页（查询、解密和反序列化都在预取线程中完成），
+ * 连续取到满页时页大小自适应翻倍，直到maxPageSize。
+ * 预取线程不在调用方的事务中，看不到事务内未提交的事件，因此处于事务中时不预取；线程池已满时也退回到同步查询。
+ *
+ * 非线程安全，用完后必须调用close()。
+ */
+class EventReplayer {
+
+    private final ICacheEventStore eventStore;
+    private final String cacheName;
+    private final int maxPageSize;
+    private final Executor executor;
+    private final ICacheMetrics metrics;
+
+    private Long afterId;
+    private int pageSize;
+    private boolean finished;
+    private Future<List<UpdateEvent>> prefetch;
+
+    EventReplayer(ICacheEventStore eventStore, String cacheName, Long afterId,
+                  int pageSize, int maxPageSize, Executor executor, ICacheMetrics metrics) {
+
+        this.eventStore = eventStore;
+        this.cacheName = cacheName;
+        this.afterId = afterId;
+        this.pageSize = pageSize;
+        this.maxPageSize = Math.max(pageSize, maxPageSize);
+        this.executor = executor;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 返回下一页事件，没有更多事件时返回空列表
+     */
+    List<UpdateEvent> nextPage() {
+        if (finished) {
+            return Collections.emptyList();
+        }
+
+        int size = pageSize;
+        long start = System.nanoTime();
+        List<UpdateEvent> page;
+        if (prefetch != null) {
+            page = await(prefetch);
+            prefetch = null;
+        } else {
+            page = eventStore.getUpdateEventList(cacheName, afterId, size);
+        }
+
+        metrics.recordReplayPage(cacheName, page.size(), System.nanoTime() - start);
+
+        if (page.size() < size) {
+            finished = true;
+            return page;
+        }
+
+        afterId = page.get(page.size() - 1).getId();
+        pageSize = Math.min(size * 2, maxPageSize);
+
+        if (executor != null && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            final Long nextAfterId = afterId;
+            final int nextSize = pageSize;
+            FutureTask<List<UpdateEvent>> task = new FutureTask<>(new Callable<List<UpdateEvent>>() {
+                @Override
+                public List<UpdateEvent> call() throws Exception {
+                    return eventStore.getUpdateEventList(cacheName, nextAfterId, nextSize);
+                }
+            });
+
+            try {
+                executor.execute(task);
+                prefetch = task;
+            } catch (RejectedExecutionException e) {
+                // 线程池已满，下一页同步查询
+            }
+        }
+
+        return page;
+    }
+
+    void close() {
+        if (prefetch != null) {
+            prefetch.cancel(true);
+            prefetch = null;
+        }
+
+        finished = true;
+    }
+
+    private static List<UpdateEvent> await(Future<List<UpdateEvent>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying events", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IllegalStateException("Failed to fetch events", cause);
+        }
+    }
+
+}
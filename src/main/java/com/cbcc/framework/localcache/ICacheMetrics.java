@@ -0,0 +1,77 @@
+package com.cbcc.framework.localcache;
+
+import java.util.function.Supplier;
+
+/**
+ * 缓存生命周期的度量，默认不记录。所有耗时单位为纳秒
+ */
+public interface ICacheMetrics {
+
+    ICacheMetrics NOOP = new ICacheMetrics() {};
+
+    String PHASE_DOWNLOAD = "download";
+    String PHASE_DESERIALIZE = "deserialize";
+    String PHASE_MAP = "map";
+    String PHASE_REPLAY = "replay";
+    String PHASE_INIT = "init";
+    String PHASE_TOTAL = "total";
+
+    String REASON_DIGEST_MISMATCH = "digest_mismatch";
+    String REASON_FLUSH = "flush";
+    String REASON_MISSING_EVENTS = "missing_events";
+
+    String SNAPSHOT_CREATE = "create";
+    String SNAPSHOT_RESTORE = "restore";
+
+    /**
+     * 构建缓存各阶段的耗时：快照下载、反序列化（或映射）、追赶事件、从数据源初始化，以及总耗时
+     */
+    default void recordBuild(String cacheName, String phase, long nanos) {
+    }
+
+    /**
+     * 应用收到的事件（批量事件为一次调用）
+     */
+    default void recordEventsApplied(String cacheName, int count, long nanos) {
+    }
+
+    /**
+     * 追赶事件时取得一页事件的耗时（开启预取时为等待预取结果的耗时）
+     */
+    default void recordReplayPage(String cacheName, int count, long nanos) {
+    }
+
+    /**
+     * 缓存失效（将被重建）
+     */
+    default void recordInvalidation(String cacheName, String reason) {
+    }
+
+    default void recordSnapshotSize(String cacheName, String operation, long bytes) {
+    }
+
+    /**
+     * 事件总线实际发送事件的耗时（异步发布时不含排队时间），由事件总线记录，批量发送时批中每个缓存各记录一次
+     */
+    default void recordPublish(String cacheName, long nanos) {
+    }
+
+    /**
+     * 异步发布重试后仍失败而丢弃的事件数，其它节点将通过序号补齐或在检查点时重建
+     */
+    default void recordPublishDropped(String cacheName, int count) {
+    }
+
+    /**
+     * 其它节点发布的更新事件从发布到在本节点应用完成的耗时，基于各节点的系统时钟，包含时钟偏差
+     */
+    default void recordReplicationLag(String cacheName, long nanos) {
+    }
+
+    /**
+     * 注册缓存新鲜度：本节点缓存的eventId落后于最近一次收到的检查点的差值，见CacheManager.getCheckpointLag
+     */
+    default void registerCheckpointLag(String cacheName, Supplier<Number> lag) {
+    }
+
+}
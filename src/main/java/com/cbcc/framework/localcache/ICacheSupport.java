@@ -1,5 +1,8 @@
 package com.cbcc.framework.localcache;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * 什么类型的数据适合做本地缓存？
  * （1）更新频率较低；
@@ -8,6 +11,7 @@ package com.cbcc.framework.localcache;
  * （4）对访问性能要求极高；
  *
  * 警告：框架确保对同一个缓存对象的更新是串行的，但不能控制应用代码对缓存对象的并发读取，因此请使用线程安全的方式实现缓存对象。
+ * 若希望读取无锁且看到一致的版本，可以实现IVersionedCacheSupport。
  */
 public interface ICacheSupport<C> {
 
@@ -37,4 +41,26 @@ public interface ICacheSupport<C> {
 
     }
 
+    /**
+     * 批量更新缓存对象，返回用于整体回滚的数据对象。默认逐条调用updateCache
+     */
+    default Object updateCacheBatch(C cache, List<Object> updates) {
+        List<Object> undoList = new ArrayList<>(updates.size());
+        for (Object update : updates) {
+            undoList.add(updateCache(cache, update));
+        }
+
+        return undoList;
+    }
+
+    /**
+     * 回滚批量更新操作，undo为updateCacheBatch的返回值。默认按相反顺序逐条调用rollbackCache
+     */
+    default void rollbackCacheBatch(C cache, Object undo) {
+        List<Object> undoList = (List<Object>) undo;
+        for (int i = undoList.size() - 1; i >= 0; i--) {
+            rollbackCache(cache, undoList.get(i));
+        }
+    }
+
 }
@@ -0,0 +1,15 @@
+package com.cbcc.framework.localcache;
+
+/**
+ * 增量维护摘要值的缓存支持：缓存对象在updateCache/rollbackCache时同步更新自身的摘要值（例如使用CombinableDigest），
+ * 检查点校验时直接读取，无需对整个缓存重新计算摘要。
+ */
+public interface IIncrementalDigestCacheSupport<C> extends ICacheSupport<C> {
+
+    /**
+     * 返回缓存对象当前维护的摘要值，要求为O(1)操作，不允许返回null。
+     * 警告：结果必须与digestCache(cache)一致。
+     */
+    String currentDigest(C cache);
+
+}
@@ -0,0 +1,17 @@
+package com.cbcc.framework.localcache;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 可直接映射快照文件的缓存支持：当快照在本地磁盘上有完整副本时（LocalCacheSnapshotPersister），
+ * 重建缓存直接映射该文件得到缓存对象，而不是逐个对象反序列化。映射失败时退化为deserializeCache。
+ */
+public interface IMappableCacheSupport<C> extends ISnapshotableCacheSupport<C> {
+
+    /**
+     * file的内容为serializeCache写出的完整快照，返回的缓存对象可以在映射的文件之上继续更新
+     */
+    C mapCache(File file) throws IOException;
+
+}
@@ -0,0 +1,18 @@
+package com.cbcc.framework.localcache;
+
+/**
+ * 多版本（写时复制）缓存：已发布的缓存对象不再被修改，每次更新（或批量更新）先调用copyCache得到副本，
+ * 在副本上调用updateCache/updateCacheBatch，再通过一次volatile写整体发布为新版本。
+ * 因此getCache()无需任何锁，并且读者看到的始终是完整应用了某次更新的一致版本，缓存对象本身无需线程安全。
+ *
+ * 适合更新较少、读取频繁的缓存；副本可以是完整拷贝，也可以是持久化数据结构的结构共享拷贝。
+ * 回滚同样在副本上调用rollbackCache/rollbackCacheBatch后发布。
+ */
+public interface IVersionedCacheSupport<C> extends ICacheSupport<C> {
+
+    /**
+     * 返回cache的可修改副本，修改副本不能影响cache
+     */
+    C copyCache(C cache);
+
+}
@@ -0,0 +1,13 @@
+package com.cbcc.framework.localcache;
+
+/**
+ * 由PartitionedCacheSupport的子类实现，使各分区以多版本（写时复制）模式运行，见IVersionedCacheSupport
+ */
+public interface IVersionedPartitionedCacheSupport<C> {
+
+    /**
+     * 返回分区缓存对象的可修改副本，修改副本不能影响cache
+     */
+    C copyCache(String partition, C cache);
+
+}
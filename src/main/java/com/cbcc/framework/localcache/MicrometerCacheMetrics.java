@@ -0,0 +1,139 @@
+package com.cbcc.framework.localcache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 基于Micrometer的度量，所有指标都带有cache标签：
+ * localcache.build（phase）、localcache.events.applied、localcache.events、localcache.replay.page、
+ * localcache.replay.page.events、localcache.invalidations（reason）、localcache.snapshot.size（operation）、localcache.publish、
+ * localcache.replication.lag、localcache.checkpoint.lag
+ */
+public class MicrometerCacheMetrics implements ICacheMetrics {
+
+    private static final String TAG_CACHE = "cache";
+
+    /**
+     * 每个事件都会记录的指标，按缓存名称注册一次后复用，避免每次记录都构建和查找Meter
+     */
+    private static class CacheMeters {
+        private final Timer eventsApplied;
+        private final Counter events;
+        private final Timer replayPage;
+        private final DistributionSummary replayPageEvents;
+        private final Timer publish;
+        private final Timer replicationLag;
+
+        CacheMeters(MeterRegistry registry, String cacheName) {
+            eventsApplied = Timer.builder("localcache.events.applied")
+                    .description("Time to apply received cache events")
+                    .tag(TAG_CACHE, cacheName)
+                    .register(registry);
+            events = registry.counter("localcache.events", TAG_CACHE, cacheName);
+            replayPage = Timer.builder("localcache.replay.page")
+                    .description("Time to fetch a page of events during catch-up")
+                    .tag(TAG_CACHE, cacheName)
+                    .register(registry);
+            replayPageEvents = DistributionSummary.builder("localcache.replay.page.events")
+                    .tag(TAG_CACHE, cacheName)
+                    .register(registry);
+            publish = Timer.builder("localcache.publish")
+                    .description("Time to send cache events to the message broker")
+                    .tag(TAG_CACHE, cacheName)
+                    .register(registry);
+            replicationLag = Timer.builder("localcache.replication.lag")
+                    .description("Time from publishing a cache event to applying it on this node")
+                    .tag(TAG_CACHE, cacheName)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+    }
+
+    private final MeterRegistry registry;
+
+    private final ConcurrentMap<String, CacheMeters> cacheMeters = new ConcurrentHashMap<>();
+
+    public MicrometerCacheMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    private CacheMeters getCacheMeters(String cacheName) {
+        CacheMeters meters = cacheMeters.get(cacheName);
+        if (meters == null) {
+            meters = cacheMeters.computeIfAbsent(cacheName, name -> new CacheMeters(registry, name));
+        }
+
+        return meters;
+    }
+
+    @Override
+    public void recordBuild(String cacheName, String phase, long nanos) {
+        Timer.builder("localcache.build")
+                .description("Time to build a local cache")
+                .tag(TAG_CACHE, cacheName)
+                .tag("phase", phase)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordEventsApplied(String cacheName, int count, long nanos) {
+        CacheMeters meters = getCacheMeters(cacheName);
+        meters.eventsApplied.record(nanos, TimeUnit.NANOSECONDS);
+        meters.events.increment(count);
+    }
+
+    @Override
+    public void recordReplayPage(String cacheName, int count, long nanos) {
+        CacheMeters meters = getCacheMeters(cacheName);
+        meters.replayPage.record(nanos, TimeUnit.NANOSECONDS);
+        meters.replayPageEvents.record(count);
+    }
+
+    @Override
+    public void recordInvalidation(String cacheName, String reason) {
+        registry.counter("localcache.invalidations", TAG_CACHE, cacheName, "reason", reason).increment();
+    }
+
+    @Override
+    public void recordSnapshotSize(String cacheName, String operation, long bytes) {
+        DistributionSummary.builder("localcache.snapshot.size")
+                .baseUnit("bytes")
+                .tag(TAG_CACHE, cacheName)
+                .tag("operation", operation)
+                .register(registry)
+                .record(bytes);
+    }
+
+    @Override
+    public void recordPublish(String cacheName, long nanos) {
+        getCacheMeters(cacheName).publish.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordPublishDropped(String cacheName, int count) {
+        registry.counter("localcache.publish.dropped", TAG_CACHE, cacheName).increment(count);
+    }
+
+    @Override
+    public void recordReplicationLag(String cacheName, long nanos) {
+        getCacheMeters(cacheName).replicationLag.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void registerCheckpointLag(String cacheName, Supplier<Number> lag) {
+        Gauge.builder("localcache.checkpoint.lag", lag)
+                .description("Event id distance between the local cache and the last checkpoint seen")
+                .tag(TAG_CACHE, cacheName)
+                .register(registry);
+    }
+
+}
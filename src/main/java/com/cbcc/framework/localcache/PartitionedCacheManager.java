@@ -0,0 +1,216 @@
+package com.cbcc.framework.localcache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * 分区缓存管理器：每个分区由一个独立的CacheManager管理（缓存名为 cacheName.partition），
+ * 因此每个分区拥有独立的事件、快照、FLUSH和检查点，重建和校验只涉及受影响的分区。
+ * 预热、检查点和事件清理对所有分区并行执行。
+ */
+public class PartitionedCacheManager<C> {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedCacheManager.class);
+
+    private static final String PATTERN_PARTITION = "[a-zA-Z_0-9]+";
+
+    public static class PartitionedCacheManagerBuilder<C> {
+
+        private final String cacheName;
+        private final PartitionedCacheSupport<C> support;
+        private final CacheManagerConfiguration defaultConfig;
+        private Executor executor;
+
+        private PartitionedCacheManagerBuilder(String cacheName,
+                                               PartitionedCacheSupport<C> support,
+                                               CacheManagerConfiguration defaultConfig) {
+
+            this.cacheName = cacheName;
+            this.support = support;
+            this.defaultConfig = defaultConfig;
+        }
+
+        /**
+         * 用于并行处理各分区，未设置时在调用线程中依次处理
+         */
+        public PartitionedCacheManagerBuilder<C> executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public PartitionedCacheManager<C> build() {
+            Collection<String> partitions = support.getPartitions();
+            if (partitions == null || partitions.isEmpty()) {
+                throw new IllegalStateException("partitions required");
+            }
+
+            Map<String, CacheManager<C>> managers = new LinkedHashMap<>();
+            for (String partition : partitions) {
+                if (!Pattern.compile(PATTERN_PARTITION).matcher(partition).matches()) {
+                    throw new IllegalArgumentException("Illegal partition name: " + partition);
+                }
+
+                CacheManager<C> cm = CacheManager.newPartitionBuilder(cacheName, partition,
+                        support.forPartition(partition), defaultConfig).build();
+
+                if (managers.put(partition, cm) != null) {
+                    throw new IllegalArgumentException("Duplicated partition: " + partition);
+                }
+            }
+
+            return new PartitionedCacheManager<>(cacheName, Collections.unmodifiableMap(managers), executor);
+        }
+
+    }
+
+    public static <C> PartitionedCacheManagerBuilder<C> newBuilder(String cacheName,
+                                                                   PartitionedCacheSupport<C> support,
+                                                                   CacheManagerConfiguration defaultConfig) {
+
+        return new PartitionedCacheManagerBuilder<C>(cacheName, support, defaultConfig);
+    }
+
+    private final String cacheName;
+    private final Map<String, CacheManager<C>> managers;
+    private final Executor executor;
+
+    private PartitionedCacheManager(String cacheName, Map<String, CacheManager<C>> managers, Executor executor) {
+        this.cacheName = cacheName;
+        this.managers = managers;
+        this.executor = executor;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public Set<String> getPartitions() {
+        return managers.keySet();
+    }
+
+    public CacheManager<C> getPartitionManager(String partition) {
+        CacheManager<C> cm = managers.get(partition);
+        if (cm == null) {
+            throw new IllegalArgumentException("Unknown partition: " + partition + ", cache: " + cacheName);
+        }
+
+        return cm;
+    }
+
+    public Collection<CacheManager<C>> getPartitionManagers() {
+        return managers.values();
+    }
+
+    public C getCache(String partition) {
+        return getPartitionManager(partition).getCache();
+    }
+
+    public void updateCache(String partition, Object update) {
+        getPartitionManager(partition).updateCache(update);
+    }
+
+    public void updateCacheBatch(String partition, Collection<?> updates) {
+        getPartitionManager(partition).updateCacheBatch(updates);
+    }
+
+    /**
+     * 只清除指定分区在所有节点的缓存
+     */
+    public void flushCache(String partition) {
+        getPartitionManager(partition).flushCache();
+    }
+
+    public void warmUp() {
+        forEachPartition(new PartitionTask<C>() {
+            @Override
+            public void run(CacheManager<C> cm) {
+                cm.warmUp();
+            }
+        });
+    }
+
+    /**
+     * 并行为所有分区创建检查点，摘要不一致时只有对应分区被重建
+     */
+    public void createCheckpoint() {
+        forEachPartition(new PartitionTask<C>() {
+            @Override
+            public void run(CacheManager<C> cm) {
+                cm.createCheckpoint();
+            }
+        });
+    }
+
+    public int purgeEvents() {
+        final AtomicInteger total = new AtomicInteger();
+        forEachPartition(new PartitionTask<C>() {
+            @Override
+            public void run(CacheManager<C> cm) {
+                total.addAndGet(cm.purgeEvents());
+            }
+        });
+
+        return total.get();
+    }
+
+    private interface PartitionTask<C> {
+        void run(CacheManager<C> cm);
+    }
+
+    /**
+     * 所有分区都执行完后才返回，任一分区失败时抛出第一个异常，其余失败记录日志
+     */
+    private void forEachPartition(final PartitionTask<C> task) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(managers.size());
+        for (final CacheManager<C> cm : managers.values()) {
+            Runnable runnable = new Runnable() {
+                @Override
+                public void run() {
+                    task.run(cm);
+                }
+            };
+
+            if (executor == null) {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                try {
+                    runnable.run();
+                    future.complete(null);
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+
+                futures.add(future);
+            } else {
+                futures.add(CompletableFuture.runAsync(runnable, executor));
+            }
+        }
+
+        RuntimeException failure = null;
+        int i = 0;
+        for (CacheManager<C> cm : managers.values()) {
+            try {
+                futures.get(i++).join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (failure == null) {
+                    failure = cause instanceof RuntimeException
+                            ? (RuntimeException) cause : new RuntimeException(cause);
+                } else {
+                    logger.error("Failed to process partition: " + cm.getCacheName(), cause);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.cbcc.framework.localcache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 分区缓存：缓存按名称划分为若干分区，每个分区独立构建、计算摘要、创建快照和FLUSH，
+ * 一个分区的数据问题只会导致该分区在各节点重建，不影响其它分区。需要快照时继承SnapshotablePartitionedCacheSupport。
+ *
+ * 分区在构建PartitionedCacheManager时确定，名称只能包含字母、数字和下划线；
+ * 分区的缓存名为 cacheName.partition，'.'不能出现在普通缓存名中，因此分区缓存名不会与普通缓存名冲突。
+ *
+ * 各分区的ICacheSupport将调用转发到带分区参数的方法；实现IVersionedPartitionedCacheSupport时分区以多版本模式运行，
+ * 重写currentDigest时检查点校验直接使用增量维护的摘要值。
+ */
+public abstract class PartitionedCacheSupport<C> {
+
+    public abstract Collection<String> getPartitions();
+
+    /**
+     * 从数据源构建一个分区的缓存对象，checkpoint的含义同ICacheSupport.initCache
+     */
+    public abstract C initCache(String partition, boolean checkpoint);
+
+    /**
+     * 分区缓存对象的摘要值，不允许返回null
+     */
+    public abstract String digestCache(String partition, C cache);
+
+    public Object updateCache(String partition, C cache, Object update) {
+        return null;
+    }
+
+    public void rollbackCache(String partition, C cache, Object undo) {
+
+    }
+
+    /**
+     * 批量更新分区缓存对象，默认逐条调用updateCache，同ICacheSupport.updateCacheBatch
+     */
+    public Object updateCacheBatch(String partition, C cache, List<Object> updates) {
+        List<Object> undoList = new ArrayList<>(updates.size());
+        for (Object update : updates) {
+            undoList.add(updateCache(partition, cache, update));
+        }
+
+        return undoList;
+    }
+
+    /**
+     * 回滚批量更新操作，默认按相反顺序逐条调用rollbackCache，同ICacheSupport.rollbackCacheBatch
+     */
+    public void rollbackCacheBatch(String partition, C cache, Object undo) {
+        List<Object> undoList = (List<Object>) undo;
+        for (int i = undoList.size() - 1; i >= 0; i--) {
+            rollbackCache(partition, cache, undoList.get(i));
+        }
+    }
+
+    /**
+     * 分区缓存对象当前维护的摘要值，同IIncrementalDigestCacheSupport.currentDigest。默认重新计算digestCache
+     */
+    public String currentDigest(String partition, C cache) {
+        return digestCache(partition, cache);
+    }
+
+    ICacheSupport<C> forPartition(String partition) {
+        return this instanceof IVersionedPartitionedCacheSupport
+                ? new VersionedPartition(partition) : new Partition(partition);
+    }
+
+    class Partition implements IIncrementalDigestCacheSupport<C> {
+
+        final String partition;
+
+        Partition(String partition) {
+            this.partition = partition;
+        }
+
+        @Override
+        public C initCache(boolean checkpoint) {
+            return PartitionedCacheSupport.this.initCache(partition, checkpoint);
+        }
+
+        @Override
+        public String digestCache(C cache) {
+            return PartitionedCacheSupport.this.digestCache(partition, cache);
+        }
+
+        @Override
+        public String currentDigest(C cache) {
+            return PartitionedCacheSupport.this.currentDigest(partition, cache);
+        }
+
+        @Override
+        public Object updateCache(C cache, Object update) {
+            return PartitionedCacheSupport.this.updateCache(partition, cache, update);
+        }
+
+        @Override
+        public void rollbackCache(C cache, Object undo) {
+            PartitionedCacheSupport.this.rollbackCache(partition, cache, undo);
+        }
+
+        @Override
+        public Object updateCacheBatch(C cache, List<Object> updates) {
+            return PartitionedCacheSupport.this.updateCacheBatch(partition, cache, updates);
+        }
+
+        @Override
+        public void rollbackCacheBatch(C cache, Object undo) {
+            PartitionedCacheSupport.this.rollbackCacheBatch(partition, cache, undo);
+        }
+    }
+
+    class VersionedPartition extends Partition implements IVersionedCacheSupport<C> {
+
+        VersionedPartition(String partition) {
+            super(partition);
+        }
+
+        @Override
+        public C copyCache(C cache) {
+            return ((IVersionedPartitionedCacheSupport<C>) PartitionedCacheSupport.this).copyCache(partition, cache);
+        }
+    }
+
+}
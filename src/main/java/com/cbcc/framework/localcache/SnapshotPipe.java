@@ -0,0 +1,119 @@
+package com.cbcc.framework.localcache;
+
+import com.cbcc.framework.localcache.event.UpdateEvent;
+import com.cbcc.framework.localcache.snapshot.ICacheSnapshotPersister;
+import com.cbcc.framework.localcache.snapshot.MeteredInputStream;
+import com.cbcc.framework.localcache.snapshot.Snapshot;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+/**
+ * 通过管道将序列化输出直接交给ICacheSnapshotPersister，避免整个快照在堆上的多次拷贝，额外内存只有管道缓冲区大小。
+ * 序列化在独立线程中执行，序列化失败时读端会收到IOException，确保不会保存不完整的快照。
+ */
+class SnapshotPipe {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static class FailurePropagatingInputStream extends PipedInputStream {
+
+        private volatile Throwable failure;
+
+        FailurePropagatingInputStream(int pipeSize) {
+            super(pipeSize);
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                checkFailure();
+            }
+
+            return b;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n < 0) {
+                checkFailure();
+            }
+
+            return n;
+        }
+
+        private void checkFailure() throws IOException {
+            if (failure != null) {
+                throw new IOException("Failed to serialize cache", failure);
+            }
+        }
+    }
+
+    private SnapshotPipe() {
+    }
+
+    static <C> Snapshot createSnapshot(ICacheSnapshotPersister persister,
+                                       ISnapshotableCacheSupport<C> support,
+                                       String cacheName,
+                                       UpdateEvent event,
+                                       C cache,
+                                       String digest,
+                                       ICacheMetrics metrics) {
+
+        final FailurePropagatingInputStream input = new FailurePropagatingInputStream(BUFFER_SIZE);
+        final PipedOutputStream output;
+        try {
+            output = new PipedOutputStream(input);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    support.serializeCache(cache, output);
+                } catch (Throwable e) {
+                    input.failure = e;
+                } finally {
+                    try {
+                        output.close();
+                    } catch (IOException e) {
+                    }
+                }
+            }
+        }, "localcache-snapshot-" + cacheName);
+        writer.setDaemon(true);
+        writer.start();
+
+        MeteredInputStream metered = new MeteredInputStream(input);
+        Snapshot snapshot;
+        try {
+            snapshot = persister.createSnapshot(cacheName, event, metered, digest);
+        } finally {
+            // 若持久化提前失败，关闭读端使写线程退出
+            try {
+                input.close();
+            } catch (IOException e) {
+            }
+        }
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (input.failure != null) {
+            throw new RuntimeException("Failed to serialize cache: " + cacheName, input.failure);
+        }
+
+        metrics.recordSnapshotSize(cacheName, ICacheMetrics.SNAPSHOT_CREATE, metered.getBytes());
+
+        return snapshot;
+    }
+
+}
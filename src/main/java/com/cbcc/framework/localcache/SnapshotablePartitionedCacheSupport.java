@@ -0,0 +1,64 @@
+package com.cbcc.framework.localcache;
+
+import java.io.*;
+
+/**
+ * 支持快照的分区缓存，每个分区独立创建快照
+ */
+public abstract class SnapshotablePartitionedCacheSupport<C> extends PartitionedCacheSupport<C> {
+
+    public abstract void serializeCache(String partition, C cache, OutputStream output);
+
+    public abstract C deserializeCache(String partition, InputStream input);
+
+    /**
+     * 快照在本地磁盘上有完整副本时直接映射，同IMappableCacheSupport.mapCache。默认从文件反序列化
+     */
+    public C mapCache(String partition, File file) throws IOException {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+            return deserializeCache(partition, input);
+        }
+    }
+
+    @Override
+    ICacheSupport<C> forPartition(String partition) {
+        return this instanceof IVersionedPartitionedCacheSupport
+                ? new VersionedSnapshotablePartition(partition) : new SnapshotablePartition(partition);
+    }
+
+    class SnapshotablePartition extends Partition implements IMappableCacheSupport<C> {
+
+        SnapshotablePartition(String partition) {
+            super(partition);
+        }
+
+        @Override
+        public void serializeCache(C cache, OutputStream output) {
+            SnapshotablePartitionedCacheSupport.this.serializeCache(partition, cache, output);
+        }
+
+        @Override
+        public C deserializeCache(InputStream input) {
+            return SnapshotablePartitionedCacheSupport.this.deserializeCache(partition, input);
+        }
+
+        @Override
+        public C mapCache(File file) throws IOException {
+            return SnapshotablePartitionedCacheSupport.this.mapCache(partition, file);
+        }
+    }
+
+    class VersionedSnapshotablePartition extends SnapshotablePartition implements IVersionedCacheSupport<C> {
+
+        VersionedSnapshotablePartition(String partition) {
+            super(partition);
+        }
+
+        @Override
+        public C copyCache(C cache) {
+            return ((IVersionedPartitionedCacheSupport<C>) SnapshotablePartitionedCacheSupport.this)
+                    .copyCache(partition, cache);
+        }
+    }
+
+}
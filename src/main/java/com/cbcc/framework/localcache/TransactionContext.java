@@ -7,8 +7,10 @@ import org.springframework.transaction.support.TransactionSynchronizationManager
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class TransactionContext {
 
@@ -17,11 +19,36 @@ public class TransactionContext {
       */
     private final List<ITransactionCallback> callbacks = new ArrayList<>();
     private final Map<String, Object> cacheMap = new HashMap<>();
+    private final Set<Object> completionKeys = new HashSet<>();
 
     public void addCallback(ITransactionCallback callback) {
         callbacks.add(callback);
     }
 
+    /**
+     * 注册事务结束（提交或回滚）时执行的动作。动作注册为独立的事务钩子，不受其它回调抛出的异常影响
+     */
+    void addCompletionAction(final Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * 同addCompletionAction，但同一事务内以同一key只注册一次，返回是否注册
+     */
+    boolean addCompletionAction(Object key, Runnable action) {
+        if (!completionKeys.add(key)) {
+            return false;
+        }
+
+        addCompletionAction(action);
+        return true;
+    }
+
     public Object getCache(String cacheName) {
         return cacheMap.get(cacheName);
     }
@@ -30,53 +57,66 @@ public class TransactionContext {
         cacheMap.put(cacheName, cache);
     }
 
-    private static final ThreadLocal<TransactionContext> CONTEXT = new ThreadLocal<TransactionContext>() {
-        @Override
-        protected TransactionContext initialValue() {
-            TransactionContext ctx = new TransactionContext();
+    private static final ThreadLocal<TransactionContext> CONTEXT = new ThreadLocal<>();
 
-            TransactionSynchronizationManager.registerSynchronization(
-                    new TransactionSynchronizationAdapter() {
+    private static TransactionContext create() {
+        TransactionContext ctx = new TransactionContext();
 
-                        @Override
-                        public int getOrder() {
-                            return Ordered.HIGHEST_PRECEDENCE;
-                        }
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+
+                    @Override
+                    public int getOrder() {
+                        return Ordered.HIGHEST_PRECEDENCE;
+                    }
 
-                        @Override
-                        public void afterCompletion(int status) {
-                            try {
-                                TransactionContext ctx = CONTEXT.get();
-
-                                if (TransactionSynchronization.STATUS_COMMITTED == status) {
-                                    for (ITransactionCallback callback : ctx.callbacks) {
-                                        callback.commit();
-                                    }
-                                } else {
-                                    for (ITransactionCallback callback : ctx.callbacks) {
-                                        callback.rollback();
-                                    }
+                    @Override
+                    public void afterCompletion(int status) {
+                        try {
+                            TransactionContext ctx = CONTEXT.get();
+
+                            if (TransactionSynchronization.STATUS_COMMITTED == status) {
+                                for (ITransactionCallback callback : ctx.callbacks) {
+                                    callback.commit();
+                                }
+                            } else {
+                                for (ITransactionCallback callback : ctx.callbacks) {
+                                    callback.rollback();
                                 }
-                            } finally {
-                                CONTEXT.remove();
                             }
+                        } finally {
+                            CONTEXT.remove();
                         }
+                    }
 
-                    });
+                });
 
-            return ctx;
-        }
-    };
+        CONTEXT.set(ctx);
+        return ctx;
+    }
 
     /**
-     * 若在非事务上下文中调用则返回null
+     * 若在非事务上下文中调用则返回null，否则返回当前事务的上下文，首次调用时创建并注册到事务
      */
     public static TransactionContext get() {
         if (!TransactionSynchronizationManager.isActualTransactionActive()) {
             return null;
         }
 
-        return CONTEXT.get();
+        TransactionContext ctx = CONTEXT.get();
+        return ctx != null ? ctx : create();
+    }
+
+    /**
+     * 返回当前事务已创建的上下文，没有时返回null，不会创建新的上下文
+     */
+    static TransactionContext current() {
+        TransactionContext ctx = CONTEXT.get();
+        if (ctx == null || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+
+        return ctx;
     }
 
 }
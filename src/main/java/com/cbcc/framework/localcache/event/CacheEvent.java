@@ -14,6 +14,11 @@ public class CacheEvent {
     @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS, include = JsonTypeInfo.As.PROPERTY, property = "clazz")
     private Object payload;
 
+    /**
+     * 发布时间（毫秒），用于度量事件到达各节点的复制延迟，早期版本的节点发布的事件为null
+     */
+    private Long publishTime;
+
     public CacheEvent() {}
 
     public CacheEvent(String cacheName, Object payload, String managerId) {
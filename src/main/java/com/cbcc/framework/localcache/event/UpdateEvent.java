@@ -11,6 +11,11 @@ import java.util.Date;
 public class UpdateEvent {
 
     private Long id;
+
+    /**
+     * 每个缓存独立、连续递增的序号，用于及时发现遗漏的事件；事件存储不支持时为null
+     */
+    private Long seq;
     private String cacheName;
     private UpdateMode updateMode;
     private Date time;
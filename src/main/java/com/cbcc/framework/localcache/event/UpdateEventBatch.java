@@ -0,0 +1,23 @@
+package com.cbcc.framework.localcache.event;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * 批量更新事件，作为CacheEvent的payload一次广播多个UpdateEvent
+ */
+@Getter
+@Setter
+public class UpdateEventBatch {
+
+    private List<UpdateEvent> events;
+
+    public UpdateEventBatch() {}
+
+    public UpdateEventBatch(List<UpdateEvent> events) {
+        this.events = events;
+    }
+
+}
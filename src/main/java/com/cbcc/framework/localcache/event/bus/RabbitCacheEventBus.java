@@ -1,9 +1,11 @@
 package com.cbcc.framework.localcache.event.bus;
 
 import com.cbcc.framework.encrypt.IEncryptor;
+import com.cbcc.framework.localcache.ICacheMetrics;
 import com.cbcc.framework.localcache.event.CacheEvent;
 import com.cbcc.framework.localcache.event.ICacheEventListener;
-import com.cbcc.framework.utils.JsonUtil;
+import com.cbcc.framework.localcache.event.codec.ICacheEventCodec;
+import com.cbcc.framework.localcache.event.codec.JsonCacheEventCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.Queue;
@@ -17,14 +19,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.*;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class RabbitCacheEventBus implements ICacheEventBus,
         SmartLifecycle, ApplicationEventPublisherAware, ApplicationListener {
 
     private static final Logger logger = LoggerFactory.getLogger(RabbitCacheEventBus.class);
 
+    private static final String HEADER_BATCH = "x-cache-event-batch";
+
     private static class CacheMessageListenerContainer extends SimpleMessageListenerContainer {
     }
 
@@ -44,13 +51,61 @@ public class RabbitCacheEventBus implements ICacheEventBus,
     @Qualifier("cacheEventEncryptor")
     private IEncryptor encryptor;
 
-    private final Map<String, List<ICacheEventListener>> listenersMap = new HashMap<>();
+    @Autowired(required = false)
+    private volatile ICacheEventCodec codec;
+
+    /**
+     * 异步发布：事件先进入有界队列，由发布线程在linger时间内合并为一条消息发送。
+     * 警告：接收端需支持批量消息，滚动升级时应先升级所有节点再开启。
+     */
+    @Value("${localcache.event.bus.rabbit.async:false}")
+    private boolean async;
+
+    @Value("${localcache.event.bus.rabbit.lingerMs:5}")
+    private long lingerMs = 5L;
+
+    @Value("${localcache.event.bus.rabbit.maxBatchSize:100}")
+    private int maxBatchSize = 100;
+
+    @Value("${localcache.event.bus.rabbit.queueCapacity:10000}")
+    private int queueCapacity = 10000;
+
+    /**
+     * 异步发布失败时的重试次数，重试间隔从publishRetryIntervalMs开始逐次加倍，仍失败时丢弃该批事件
+     */
+    @Value("${localcache.event.bus.rabbit.publishRetries:3}")
+    private int publishRetries = 3;
+
+    @Value("${localcache.event.bus.rabbit.publishRetryIntervalMs:100}")
+    private long publishRetryIntervalMs = 100L;
+
+    @Autowired(required = false)
+    private ICacheMetrics metrics;
+
+    /**
+     * 按cacheName分片并行分发事件，同一缓存的事件始终由同一线程按序处理
+     */
+    @Value("${localcache.event.bus.rabbit.dispatchThreads:1}")
+    private int dispatchThreads = 1;
+
+    @Value("${localcache.event.bus.rabbit.dispatchQueueCapacity:10000}")
+    private int dispatchQueueCapacity = 10000;
+
+    private volatile BlockingQueue<CacheEvent> publishQueue;
+    private Thread publisherThread;
+    private ExecutorService[] dispatchers;
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    private final Map<String, List<ICacheEventListener>> listenersMap = new ConcurrentHashMap<>();
 
     private CacheMessageListenerContainer messageListenerContainer;
     private ApplicationEventPublisher applicationEventPublisher;
 
     private volatile boolean stopped = true;
 
+    private int phase = DEFAULT_PHASE;
+
     @Override
     public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
         this.applicationEventPublisher = applicationEventPublisher;
@@ -58,35 +113,244 @@ public class RabbitCacheEventBus implements ICacheEventBus,
 
     @Override
     public void addEventListener(String cacheName, ICacheEventListener listener) {
-        List<ICacheEventListener> listeners = listenersMap.get(cacheName);
-        if (listeners == null) {
-            listeners = new ArrayList<>();
-            listenersMap.put(cacheName, listeners);
-        }
+        List<ICacheEventListener> listeners = listenersMap.computeIfAbsent(cacheName,
+                k -> new CopyOnWriteArrayList<>());
 
         listeners.add(listener);
     }
 
     @Override
     public void publishEvent(CacheEvent event) {
-        byte[] bytes;
+        BlockingQueue<CacheEvent> queue = publishQueue;
+        if (queue != null) {
+            try {
+                queue.put(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+
+            // 放入队列时发布线程可能已经停止，由调用方同步发送剩余的事件
+            if (publishQueue != queue) {
+                drainPublishQueue(queue);
+            }
+
+            return;
+        }
+
+        publishBatch(Collections.singletonList(event));
+    }
+
+    /**
+     * 发送一批事件，发送耗时计入批中每个缓存的localcache.publish
+     */
+    private void publishBatch(List<CacheEvent> events) {
+        long start = System.nanoTime();
+        if (events.size() == 1) {
+            rabbitTemplate.convertAndSend(exchangeName, "", getCodec().encode(events.get(0)));
+        } else {
+            rabbitTemplate.convertAndSend(exchangeName, "", getCodec().encodeBatch(events), new MessagePostProcessor() {
+                @Override
+                public Message postProcessMessage(Message message) {
+                    message.getMessageProperties().setHeader(HEADER_BATCH, Boolean.TRUE);
+                    return message;
+                }
+            });
+        }
+
+        if (metrics == null) {
+            return;
+        }
+
+        long nanos = System.nanoTime() - start;
+        Set<String> cacheNames = new HashSet<>();
+        for (CacheEvent event : events) {
+            if (cacheNames.add(String.valueOf(event.getCacheName()))) {
+                metrics.recordPublish(String.valueOf(event.getCacheName()), nanos);
+            }
+        }
+    }
+
+    /**
+     * 发布一批事件，失败时按退避间隔重试，重试后仍失败则丢弃并计数
+     */
+    private void publishBatchWithRetry(List<CacheEvent> events) throws InterruptedException {
+        long interval = publishRetryIntervalMs;
+        for (int i = 0; ; i++) {
+            try {
+                publishBatch(events);
+                return;
+            } catch (Exception e) {
+                if (i >= publishRetries) {
+                    logger.error("Failed to publish cache events, dropped " + events.size() + " events", e);
+                    dropEvents(events);
+                    return;
+                }
+
+                logger.warn("Failed to publish cache events, retry in " + interval + "ms", e);
+            }
+
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                dropEvents(events);
+                throw e;
+            }
+
+            interval *= 2;
+        }
+    }
+
+    private void dropEvents(List<CacheEvent> events) {
+        droppedEvents.addAndGet(events.size());
+        if (metrics == null) {
+            return;
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (CacheEvent event : events) {
+            counts.merge(String.valueOf(event.getCacheName()), 1, Integer::sum);
+        }
+
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            metrics.recordPublishDropped(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 异步发布重试后仍失败而丢弃的事件总数
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents.get();
+    }
+
+    private ICacheEventCodec getCodec() {
+        ICacheEventCodec c = codec;
+        if (c == null) {
+            synchronized (this) {
+                c = codec;
+                if (c == null) {
+                    c = new JsonCacheEventCodec(encryptor);
+                    codec = c;
+                }
+            }
+        }
+
+        return c;
+    }
+
+    private void startPublisher() {
+        final BlockingQueue<CacheEvent> queue = new ArrayBlockingQueue<>(queueCapacity);
+        publisherThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runPublisher(queue);
+            }
+        }, "localcache-event-publisher");
+        publisherThread.setDaemon(true);
+        // 先发布队列再启动线程，发布线程据此判断是否已停止
+        publishQueue = queue;
+        publisherThread.start();
+    }
+
+    private void runPublisher(BlockingQueue<CacheEvent> queue) {
+        List<CacheEvent> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            try {
+                CacheEvent first = queue.poll(1000L, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    // 已停止且队列已排空
+                    if (publishQueue != queue) {
+                        return;
+                    }
+
+                    continue;
+                }
+
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    CacheEvent event = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (event == null) {
+                        break;
+                    }
+
+                    batch.add(event);
+                }
+
+                publishBatchWithRetry(batch);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void stopPublisher() {
+        if (publisherThread == null) {
+            return;
+        }
+
+        BlockingQueue<CacheEvent> queue = publishQueue;
+        publishQueue = null;
+        Thread thread = publisherThread;
+        publisherThread = null;
         try {
-            String str = JsonUtil.toJson(event);
-            if (encryptor != null) {
-                str = encryptor.encrypt(str);
+            thread.join(5000L);
+            if (thread.isAlive()) {
+                // 发布线程可能仍在重试退避中，中断后等待其退出，避免与下面的同步发送并发
+                thread.interrupt();
+                thread.join(5000L);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
 
-            bytes = str.getBytes("UTF-8");
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        if (thread.isAlive()) {
+            List<CacheEvent> rest = new ArrayList<>();
+            queue.drainTo(rest);
+            logger.error("Publisher thread did not stop, dropped " + rest.size() + " events");
+            dropEvents(rest);
+            return;
         }
 
-        rabbitTemplate.convertAndSend(exchangeName, "", bytes);
+        drainPublishQueue(queue);
+    }
+
+    /**
+     * 发布线程停止后，同步发送队列中剩余的事件
+     */
+    private void drainPublishQueue(BlockingQueue<CacheEvent> queue) {
+        List<CacheEvent> batch = new ArrayList<>(maxBatchSize);
+        while (queue.drainTo(batch, maxBatchSize) > 0) {
+            try {
+                publishBatchWithRetry(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                List<CacheEvent> rest = new ArrayList<>();
+                queue.drainTo(rest);
+                dropEvents(rest);
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
     }
 
     @Override
     public void start() {
+        if (dispatchThreads > 1) {
+            startDispatchers();
+        }
+
         initCacheEventListener();
+
+        if (async) {
+            startPublisher();
+        }
+
         stopped = false;
     }
 
@@ -108,20 +372,21 @@ public class RabbitCacheEventBus implements ICacheEventBus,
 
             @Override
             public void onMessage(Message message) {
-                CacheEvent event;
+                List<CacheEvent> events;
                 try {
-                    String str = new String(message.getBody(), "UTF-8");
-                    if (encryptor != null) {
-                        str = encryptor.decrypt(str);
+                    if (message.getMessageProperties().getHeaders().get(HEADER_BATCH) != null) {
+                        events = getCodec().decodeBatch(message.getBody());
+                    } else {
+                        events = Collections.singletonList(getCodec().decode(message.getBody()));
                     }
-
-                    event = JsonUtil.toBean(str, CacheEvent.class);
                 } catch (Exception e) {
                     logger.error("Failed to read message", e);
                     return;
                 }
 
-                handleCacheEvent(event);
+                for (CacheEvent event : events) {
+                    dispatchCacheEvent(event);
+                }
             }
         });
 
@@ -129,6 +394,58 @@ public class RabbitCacheEventBus implements ICacheEventBus,
         messageListenerContainer.start();
     }
 
+    private void startDispatchers() {
+        dispatchers = new ExecutorService[dispatchThreads];
+        for (int i = 0; i < dispatchThreads; i++) {
+            // 队列满时阻塞消费线程，不能使用CallerRunsPolicy，否则会打乱同一缓存的事件顺序
+            dispatchers[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(dispatchQueueCapacity),
+                    new CustomizableThreadFactory("localcache-event-dispatcher-" + i + "-"),
+                    new RejectedExecutionHandler() {
+                        @Override
+                        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                            if (executor.isShutdown()) {
+                                return;
+                            }
+
+                            try {
+                                executor.getQueue().put(r);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    });
+        }
+    }
+
+    private void stopDispatchers() {
+        if (dispatchers == null) {
+            return;
+        }
+
+        for (ExecutorService dispatcher : dispatchers) {
+            dispatcher.shutdown();
+        }
+
+        dispatchers = null;
+    }
+
+    private void dispatchCacheEvent(final CacheEvent event) {
+        ExecutorService[] executors = dispatchers;
+        if (executors == null || event.getCacheName() == null) {
+            handleCacheEvent(event);
+            return;
+        }
+
+        int i = Math.floorMod(event.getCacheName().hashCode(), executors.length);
+        executors[i].execute(new Runnable() {
+            @Override
+            public void run() {
+                handleCacheEvent(event);
+            }
+        });
+    }
+
     private void handleCacheEvent(CacheEvent event) {
         List<ICacheEventListener> listeners = listenersMap.get(event.getCacheName());
         if (listeners == null || listeners.size() == 0) {
@@ -147,7 +464,9 @@ public class RabbitCacheEventBus implements ICacheEventBus,
 
     @Override
     public void stop() {
+        stopPublisher();
         messageListenerContainer.stop();
+        stopDispatchers();
         stopped = true;
     }
 
@@ -156,6 +475,18 @@ public class RabbitCacheEventBus implements ICacheEventBus,
         return !stopped;
     }
 
+    /**
+     * 开启缓存预热时应先于预热启动，避免预热完成到开始监听之间的事件丢失
+     */
+    public void setPhase(int phase) {
+        this.phase = phase;
+    }
+
+    @Override
+    public int getPhase() {
+        return phase;
+    }
+
     @Override
     public void onApplicationEvent(ApplicationEvent event) {
         if (event instanceof ListenerContainerConsumerFailedEvent) {
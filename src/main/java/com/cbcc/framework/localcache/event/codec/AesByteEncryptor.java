@@ -0,0 +1,56 @@
+package com.cbcc.framework.localcache.event.codec;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * AES/CBC加密，密钥和IV分别由key、iv的SHA-256摘要得到
+ */
+public class AesByteEncryptor implements IByteEncryptor {
+
+    private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+
+    private final SecretKeySpec keySpec;
+    private final IvParameterSpec ivSpec;
+
+    public AesByteEncryptor(String key, String iv) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("The encrypt key required");
+        }
+
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            keySpec = new SecretKeySpec(sha256.digest(key.getBytes(StandardCharsets.UTF_8)), "AES");
+            ivSpec = new IvParameterSpec(Arrays.copyOf(
+                    sha256.digest((iv == null ? "" : iv).getBytes(StandardCharsets.UTF_8)), 16));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public byte[] encrypt(byte[] bytes) {
+        return cipher(Cipher.ENCRYPT_MODE, bytes);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] bytes) {
+        return cipher(Cipher.DECRYPT_MODE, bytes);
+    }
+
+    private byte[] cipher(int mode, byte[] bytes) {
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(mode, keySpec, ivSpec);
+            return cipher.doFinal(bytes);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
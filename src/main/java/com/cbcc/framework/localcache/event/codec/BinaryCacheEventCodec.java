@@ -0,0 +1,345 @@
+package com.cbcc.framework.localcache.event.codec;
+
+import com.cbcc.framework.encrypt.IEncryptor;
+import com.cbcc.framework.encrypt.NoopEncryptor;
+import com.cbcc.framework.localcache.event.*;
+import com.cbcc.framework.utils.JsonUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑的二进制编解码：事件结构按字段直接写入，更新数据按注册的类型ID（未注册时退化为类名）+ JSON写入。
+ * 存在cacheEventByteEncryptor时直接加密字节；否则退化为使用与JsonCacheEventCodec相同的cacheEventEncryptor，
+ * 编码后的字节经Base64转换为字符串后加密，消息更大、更慢。
+ *
+ * 警告：与JsonCacheEventCodec的消息格式不兼容，所有节点注册的类型ID和使用的加密方式都必须一致。
+ */
+public class BinaryCacheEventCodec implements ICacheEventCodec {
+
+    private static final byte VERSION = 1;
+
+    private static final byte PAYLOAD_NULL = 0;
+    private static final byte PAYLOAD_UPDATE_EVENT = 1;
+    private static final byte PAYLOAD_CHECKPOINT = 2;
+    private static final byte PAYLOAD_UPDATE_EVENT_BATCH = 3;
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_CLASS_NAME = -1;
+
+    @Autowired(required = false)
+    @Qualifier("cacheEventByteEncryptor")
+    private IByteEncryptor byteEncryptor;
+
+    @Autowired(required = false)
+    @Qualifier("cacheEventEncryptor")
+    private IEncryptor encryptor;
+
+    private final Map<Integer, Class<?>> typeMap = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Integer> typeIdMap = new ConcurrentHashMap<>();
+
+    public BinaryCacheEventCodec() {}
+
+    public BinaryCacheEventCodec(IByteEncryptor byteEncryptor) {
+        this.byteEncryptor = byteEncryptor;
+    }
+
+    public BinaryCacheEventCodec(IEncryptor encryptor) {
+        this.encryptor = encryptor;
+    }
+
+    /**
+     * 注册更新数据的类型ID（必须为正数），以ID代替类名写入消息
+     */
+    public BinaryCacheEventCodec registerType(int typeId, Class<?> clazz) {
+        if (typeId <= 0) {
+            throw new IllegalArgumentException("The type id must be positive: " + typeId);
+        }
+
+        Class<?> existing = typeMap.putIfAbsent(typeId, clazz);
+        if (existing != null && existing != clazz) {
+            throw new IllegalArgumentException("Duplicated type id: " + typeId);
+        }
+
+        typeIdMap.put(clazz, typeId);
+        return this;
+    }
+
+    @Override
+    public byte[] encode(CacheEvent event) {
+        return encode(Collections.singletonList(event), false);
+    }
+
+    @Override
+    public byte[] encodeBatch(List<CacheEvent> events) {
+        return encode(events, true);
+    }
+
+    @Override
+    public CacheEvent decode(byte[] bytes) {
+        return decode(bytes, false).get(0);
+    }
+
+    @Override
+    public List<CacheEvent> decodeBatch(byte[] bytes) {
+        return decode(bytes, true);
+    }
+
+    private byte[] encode(List<CacheEvent> events, boolean batch) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeByte(VERSION);
+            if (batch) {
+                output.writeInt(events.size());
+            }
+
+            for (CacheEvent event : events) {
+                writeCacheEvent(output, event);
+            }
+
+            // 发布时间写在所有事件之后，早期版本的解码忽略多余的字节，因此无需升级VERSION
+            for (CacheEvent event : events) {
+                writeLong(output, event.getPublishTime());
+            }
+
+            output.flush();
+            return encrypt(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private List<CacheEvent> decode(byte[] bytes, boolean batch) {
+        try {
+            DataInputStream input = new DataInputStream(
+                    new ByteArrayInputStream(decrypt(bytes)));
+
+            byte version = input.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version: " + version);
+            }
+
+            int count = batch ? input.readInt() : 1;
+            List<CacheEvent> events = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                events.add(readCacheEvent(input));
+            }
+
+            if (input.available() > 0) {
+                for (CacheEvent event : events) {
+                    event.setPublishTime(readLong(input));
+                }
+            }
+
+            return events;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean isStringEncrypted() {
+        return encryptor != null && !(encryptor instanceof NoopEncryptor);
+    }
+
+    private byte[] encrypt(byte[] bytes) {
+        if (byteEncryptor != null) {
+            return byteEncryptor.encrypt(bytes);
+        }
+
+        if (!isStringEncrypted()) {
+            return bytes;
+        }
+
+        return encryptor.encrypt(Base64.getEncoder().encodeToString(bytes)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] decrypt(byte[] bytes) {
+        if (byteEncryptor != null) {
+            return byteEncryptor.decrypt(bytes);
+        }
+
+        if (!isStringEncrypted()) {
+            return bytes;
+        }
+
+        return Base64.getDecoder().decode(encryptor.decrypt(new String(bytes, StandardCharsets.UTF_8)));
+    }
+
+    private void writeCacheEvent(DataOutputStream output, CacheEvent event) throws IOException {
+        writeString(output, event.getManagerId());
+        writeString(output, event.getCacheName());
+
+        Object payload = event.getPayload();
+        if (payload == null) {
+            output.writeByte(PAYLOAD_NULL);
+        } else if (payload instanceof UpdateEvent) {
+            output.writeByte(PAYLOAD_UPDATE_EVENT);
+            writeUpdateEvent(output, (UpdateEvent) payload);
+        } else if (payload instanceof Checkpoint) {
+            Checkpoint checkpoint = (Checkpoint) payload;
+            output.writeByte(PAYLOAD_CHECKPOINT);
+            writeString(output, checkpoint.getCacheName());
+            writeDate(output, checkpoint.getTime());
+            writeLong(output, checkpoint.getEventId());
+            writeString(output, checkpoint.getDigest());
+        } else if (payload instanceof UpdateEventBatch) {
+            List<UpdateEvent> list = ((UpdateEventBatch) payload).getEvents();
+            output.writeByte(PAYLOAD_UPDATE_EVENT_BATCH);
+            output.writeInt(list.size());
+            for (UpdateEvent e : list) {
+                writeUpdateEvent(output, e);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported payload: " + payload.getClass());
+        }
+    }
+
+    private CacheEvent readCacheEvent(DataInputStream input) throws IOException {
+        CacheEvent event = new CacheEvent();
+        event.setManagerId(readString(input));
+        event.setCacheName(readString(input));
+
+        byte kind = input.readByte();
+        switch (kind) {
+            case PAYLOAD_NULL:
+                break;
+            case PAYLOAD_UPDATE_EVENT:
+                event.setPayload(readUpdateEvent(input));
+                break;
+            case PAYLOAD_CHECKPOINT:
+                Checkpoint checkpoint = new Checkpoint();
+                checkpoint.setCacheName(readString(input));
+                checkpoint.setTime(readDate(input));
+                checkpoint.setEventId(readLong(input));
+                checkpoint.setDigest(readString(input));
+                event.setPayload(checkpoint);
+                break;
+            case PAYLOAD_UPDATE_EVENT_BATCH:
+                int n = input.readInt();
+                List<UpdateEvent> list = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    list.add(readUpdateEvent(input));
+                }
+
+                event.setPayload(new UpdateEventBatch(list));
+                break;
+            default:
+                throw new IOException("Unknown payload kind: " + kind);
+        }
+
+        return event;
+    }
+
+    private void writeUpdateEvent(DataOutputStream output, UpdateEvent event) throws IOException {
+        writeLong(output, event.getId());
+        writeLong(output, event.getSeq());
+        writeString(output, event.getCacheName());
+        output.writeByte(event.getUpdateMode() == null ? -1 : event.getUpdateMode().ordinal());
+        writeDate(output, event.getTime());
+
+        Object data = event.getData();
+        if (data == null) {
+            output.writeInt(TYPE_NULL);
+            return;
+        }
+
+        Integer typeId = typeIdMap.get(data.getClass());
+        if (typeId != null) {
+            output.writeInt(typeId);
+        } else {
+            output.writeInt(TYPE_CLASS_NAME);
+            writeString(output, data.getClass().getName());
+        }
+
+        byte[] bytes = JsonUtil.toJson(data).getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private UpdateEvent readUpdateEvent(DataInputStream input) throws IOException {
+        UpdateEvent event = new UpdateEvent();
+        event.setId(readLong(input));
+        event.setSeq(readLong(input));
+        event.setCacheName(readString(input));
+
+        byte mode = input.readByte();
+        if (mode >= 0) {
+            event.setUpdateMode(UpdateMode.values()[mode]);
+        }
+
+        event.setTime(readDate(input));
+
+        int typeId = input.readInt();
+        if (typeId == TYPE_NULL) {
+            return event;
+        }
+
+        Class<?> clazz;
+        if (typeId == TYPE_CLASS_NAME) {
+            String className = readString(input);
+            try {
+                clazz = Class.forName(className, true, Thread.currentThread().getContextClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unknown class: " + className, e);
+            }
+        } else {
+            clazz = typeMap.get(typeId);
+            if (clazz == null) {
+                throw new IOException("Unknown type id: " + typeId);
+            }
+        }
+
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        event.setData(JsonUtil.toBean(new String(bytes, StandardCharsets.UTF_8), clazz));
+        return event;
+    }
+
+    private static void writeString(DataOutputStream output, String s) throws IOException {
+        if (s == null) {
+            output.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int len = input.readInt();
+        if (len < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[len];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeLong(DataOutputStream output, Long value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readLong() : null;
+    }
+
+    private static void writeDate(DataOutputStream output, Date date) throws IOException {
+        writeLong(output, date == null ? null : date.getTime());
+    }
+
+    private static Date readDate(DataInputStream input) throws IOException {
+        Long time = readLong(input);
+        return time == null ? null : new Date(time);
+    }
+
+}
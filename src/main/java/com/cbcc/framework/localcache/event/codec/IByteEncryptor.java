@@ -0,0 +1,12 @@
+package com.cbcc.framework.localcache.event.codec;
+
+/**
+ * 直接作用于字节的加密器，供二进制编解码使用，避免转换为字符串
+ */
+public interface IByteEncryptor {
+
+    byte[] encrypt(byte[] bytes);
+
+    byte[] decrypt(byte[] bytes);
+
+}
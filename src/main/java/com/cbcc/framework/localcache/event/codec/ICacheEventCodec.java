@@ -0,0 +1,20 @@
+package com.cbcc.framework.localcache.event.codec;
+
+import com.cbcc.framework.localcache.event.CacheEvent;
+
+import java.util.List;
+
+/**
+ * 事件总线上CacheEvent的编解码（包括加密），所有节点必须使用相同的实现
+ */
+public interface ICacheEventCodec {
+
+    byte[] encode(CacheEvent event);
+
+    byte[] encodeBatch(List<CacheEvent> events);
+
+    CacheEvent decode(byte[] bytes);
+
+    List<CacheEvent> decodeBatch(byte[] bytes);
+
+}
@@ -0,0 +1,65 @@
+package com.cbcc.framework.localcache.event.codec;
+
+import com.cbcc.framework.encrypt.IEncryptor;
+import com.cbcc.framework.localcache.event.CacheEvent;
+import com.cbcc.framework.utils.JsonUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 默认的JSON编解码，与早期版本的消息格式兼容
+ */
+public class JsonCacheEventCodec implements ICacheEventCodec {
+
+    @Autowired(required = false)
+    @Qualifier("cacheEventEncryptor")
+    private IEncryptor encryptor;
+
+    public JsonCacheEventCodec() {}
+
+    public JsonCacheEventCodec(IEncryptor encryptor) {
+        this.encryptor = encryptor;
+    }
+
+    @Override
+    public byte[] encode(CacheEvent event) {
+        return toBytes(JsonUtil.toJson(event));
+    }
+
+    @Override
+    public byte[] encodeBatch(List<CacheEvent> events) {
+        return toBytes(JsonUtil.toJson(events));
+    }
+
+    @Override
+    public CacheEvent decode(byte[] bytes) {
+        return JsonUtil.toBean(toString(bytes), CacheEvent.class);
+    }
+
+    @Override
+    public List<CacheEvent> decodeBatch(byte[] bytes) {
+        return Arrays.asList(JsonUtil.toBean(toString(bytes), CacheEvent[].class));
+    }
+
+    private byte[] toBytes(String str) {
+        if (encryptor != null) {
+            str = encryptor.encrypt(str);
+        }
+
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String toString(byte[] bytes) {
+        String str = new String(bytes, StandardCharsets.UTF_8);
+        if (encryptor != null) {
+            str = encryptor.decrypt(str);
+        }
+
+        return str;
+    }
+
+}
@@ -3,16 +3,44 @@ package com.cbcc.framework.localcache.event.store;
 import com.cbcc.framework.localcache.event.UpdateEvent;
 import com.cbcc.framework.localcache.event.UpdateMode;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public interface ICacheEventStore {
 
     UpdateEvent createUpdateEvent(String cacheName, UpdateMode updateMode, Object data);
 
+    /**
+     * 批量创建UPDATE事件，返回的事件与dataList顺序一致
+     */
+    default List<UpdateEvent> createUpdateEvents(String cacheName, List<Object> dataList) {
+        List<UpdateEvent> result = new ArrayList<>(dataList.size());
+        for (Object data : dataList) {
+            result.add(createUpdateEvent(cacheName, UpdateMode.UPDATE, data));
+        }
+
+        return result;
+    }
+
     UpdateEvent getLastUpdateEvent(String cacheName);
 
     List<UpdateEvent> getUpdateEventList(String cacheName, Long afterId, int limit);
 
     boolean detectsFlushAfter(String cacheName, Long afterId);
 
+    /**
+     * 按缓存序号（UpdateEvent.seq）顺序查询afterSeq之后的事件，仅在事件存储为事件分配了序号时调用。
+     * 为事件分配序号的实现必须支持该查询，否则每次发现遗漏事件都会导致缓存失效并重建；不分配序号的实现返回空列表即可。
+     */
+    List<UpdateEvent> getUpdateEventListBySeq(String cacheName, Long afterSeq, int limit);
+
+    /**
+     * 清理eventId之前的事件（不包括eventId本身），返回清理的事件数。
+     * 实现必须保证detectsFlushAfter的语义：对于afterId小于eventId的查询返回true，使落后于清理位置的节点重建缓存。
+     * 警告：不要在事务中调用，以便分批提交。
+     */
+    default int purgeEventsBefore(String cacheName, Long eventId) {
+        return 0;
+    }
+
 }
@@ -0,0 +1,346 @@
+package com.cbcc.framework.localcache.event.store;
+
+import com.cbcc.framework.encrypt.IEncryptor;
+import com.cbcc.framework.localcache.event.UpdateEvent;
+import com.cbcc.framework.localcache.event.UpdateMode;
+import com.cbcc.framework.utils.JsonUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * 基于本地文件的事件存储：分段、内存映射、只追加的日志，每个缓存维护一个 事件ID->位置 的内存索引，
+ * 范围查询通过索引扫描完成，detectsFlushAfter通过每个缓存最近一次FLUSH事件的ID判断。
+ *
+ * 适用于单节点部署和集成测试，事件不会在节点间共享。
+ * 在事务中创建的事件于事务提交后才写入日志（回滚则丢弃），与数据库事件存储的可见性一致。
+ */
+public class JournalCacheEventStore implements ICacheEventStore, InitializingBean, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(JournalCacheEventStore.class);
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // 记录头：长度 + CRC32
+    private static final int HEADER_SIZE = 8;
+
+    private static class Segment {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int position;
+
+        Segment(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static class CacheIndex {
+        private final ConcurrentNavigableMap<Long, Long> positions = new ConcurrentSkipListMap<>();
+        private volatile long lastFlushId;
+    }
+
+    @Value("${localcache.event.store.journal.dir:localcache-journal}")
+    private String dir = "localcache-journal";
+
+    @Value("${localcache.event.store.journal.segmentSize:67108864}")
+    private int segmentSize = 64 * 1024 * 1024;
+
+    @Value("${localcache.event.store.journal.fsync:false}")
+    private boolean fsync;
+
+    @Autowired(required = false)
+    @Qualifier("cacheEventEncryptor")
+    private IEncryptor encryptor;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<String, CacheIndex> indexes = new ConcurrentHashMap<>();
+    private final AtomicLong lastId = new AtomicLong();
+
+    public JournalCacheEventStore() {}
+
+    public JournalCacheEventStore(String dir, int segmentSize) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        File directory = new File(dir);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create journal directory: " + directory.getAbsolutePath());
+        }
+
+        File[] files = directory.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                recover(openSegment(file));
+            }
+        }
+
+        if (segments.isEmpty()) {
+            segments.add(openSegment(newSegmentFile()));
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+
+    @Override
+    public UpdateEvent createUpdateEvent(String cacheName, UpdateMode updateMode, Object data) {
+        return createUpdateEvents(cacheName, updateMode, Collections.singletonList(data)).get(0);
+    }
+
+    @Override
+    public List<UpdateEvent> createUpdateEvents(String cacheName, List<Object> dataList) {
+        return createUpdateEvents(cacheName, UpdateMode.UPDATE, dataList);
+    }
+
+    private List<UpdateEvent> createUpdateEvents(String cacheName, UpdateMode updateMode, List<Object> dataList) {
+        Date time = new Date();
+        final List<UpdateEvent> events = new ArrayList<>(dataList.size());
+        final List<byte[]> records = new ArrayList<>(dataList.size());
+        for (Object data : dataList) {
+            UpdateEvent event = new UpdateEvent();
+            event.setId(lastId.incrementAndGet());
+            event.setCacheName(cacheName);
+            event.setUpdateMode(updateMode);
+            event.setTime(time);
+            event.setData(data);
+            byte[] record = encode(event);
+            if (record.length + HEADER_SIZE > segmentSize) {
+                throw new IllegalArgumentException("The cache event exceeds the segment size: " + record.length);
+            }
+
+            events.add(event);
+            records.add(record);
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    append(events, records);
+                }
+            });
+        } else {
+            append(events, records);
+        }
+
+        return events;
+    }
+
+    @Override
+    public UpdateEvent getLastUpdateEvent(String cacheName) {
+        CacheIndex index = indexes.get(cacheName);
+        if (index == null) {
+            return null;
+        }
+
+        Map.Entry<Long, Long> entry = index.positions.lastEntry();
+        return entry == null ? null : read(entry.getValue());
+    }
+
+    @Override
+    public List<UpdateEvent> getUpdateEventList(String cacheName, Long afterId, int limit) {
+        List<UpdateEvent> result = new ArrayList<>();
+        CacheIndex index = indexes.get(cacheName);
+        if (index == null) {
+            return result;
+        }
+
+        for (Long position : index.positions.tailMap(afterId == null ? 0L : afterId, false).values()) {
+            if (result.size() >= limit) {
+                break;
+            }
+
+            result.add(read(position));
+        }
+
+        return result;
+    }
+
+    /**
+     * 不分配缓存序号，不会按序号补齐事件
+     */
+    @Override
+    public List<UpdateEvent> getUpdateEventListBySeq(String cacheName, Long afterSeq, int limit) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean detectsFlushAfter(String cacheName, Long afterId) {
+        CacheIndex index = indexes.get(cacheName);
+        return index != null && index.lastFlushId > (afterId == null ? 0L : afterId);
+    }
+
+    private synchronized void append(List<UpdateEvent> events, List<byte[]> records) {
+        for (int i = 0, n = events.size(); i < n; i++) {
+            byte[] record = records.get(i);
+            Segment segment = segments.get(segments.size() - 1);
+            if (segment.position + HEADER_SIZE + record.length > segmentSize) {
+                segment.buffer.force();
+                segment = openSegment(newSegmentFile());
+                segments.add(segment);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(record, 0, record.length);
+
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(segment.position);
+            buffer.putInt(record.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(record);
+
+            long position = ((long) (segments.size() - 1) << 32) | segment.position;
+            segment.position += HEADER_SIZE + record.length;
+            index(events.get(i), position);
+        }
+
+        if (fsync) {
+            segments.get(segments.size() - 1).buffer.force();
+        }
+    }
+
+    private void index(UpdateEvent event, long position) {
+        CacheIndex index = indexes.computeIfAbsent(event.getCacheName(), k -> new CacheIndex());
+        index.positions.put(event.getId(), position);
+        if (UpdateMode.FLUSH.equals(event.getUpdateMode()) && event.getId() > index.lastFlushId) {
+            index.lastFlushId = event.getId();
+        }
+    }
+
+    private UpdateEvent read(long position) {
+        Segment segment;
+        synchronized (this) {
+            segment = segments.get((int) (position >>> 32));
+        }
+
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position((int) position + HEADER_SIZE);
+        return decode(buffer);
+    }
+
+    private void recover(Segment segment) {
+        segments.add(segment);
+        long segmentIndex = segments.size() - 1;
+
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int position = 0;
+        while (position + HEADER_SIZE <= segmentSize) {
+            buffer.position(position);
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || position + HEADER_SIZE + length > segmentSize) {
+                break;
+            }
+
+            byte[] record = new byte[length];
+            buffer.get(record);
+            CRC32 crc = new CRC32();
+            crc.update(record, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                logger.warn("Truncated journal segment at " + position + ": " + segment.file);
+                break;
+            }
+
+            UpdateEvent event = decode(ByteBuffer.wrap(record));
+            index(event, (segmentIndex << 32) | position);
+
+            if (event.getId() > lastId.get()) {
+                lastId.set(event.getId());
+            }
+
+            position += HEADER_SIZE + length;
+        }
+
+        segment.position = position;
+    }
+
+    private File newSegmentFile() {
+        return new File(dir, String.format("%s%010d%s", SEGMENT_PREFIX, segments.size(), SEGMENT_SUFFIX));
+    }
+
+    private Segment openSegment(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            return new Segment(file, buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open journal segment: " + file, e);
+        }
+    }
+
+    /**
+     * 记录格式：id(8) + time(8) + updateMode(1) + cacheName(2 + n) + data(4 + n)
+     */
+    private byte[] encode(UpdateEvent event) {
+        UpdateEvent e = new UpdateEvent();
+        e.setData(event.getData());
+        String str = JsonUtil.toJson(e);
+        if (encryptor != null) {
+            str = encryptor.encrypt(str);
+        }
+
+        byte[] name = event.getCacheName().getBytes(StandardCharsets.UTF_8);
+        byte[] data = str.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 8 + 1 + 2 + name.length + 4 + data.length);
+        buffer.putLong(event.getId());
+        buffer.putLong(event.getTime().getTime());
+        buffer.put((byte) event.getUpdateMode().ordinal());
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+        buffer.putInt(data.length);
+        buffer.put(data);
+        return buffer.array();
+    }
+
+    private UpdateEvent decode(ByteBuffer buffer) {
+        long id = buffer.getLong();
+        long time = buffer.getLong();
+        UpdateMode updateMode = UpdateMode.values()[buffer.get()];
+        byte[] name = new byte[buffer.getShort()];
+        buffer.get(name);
+        byte[] data = new byte[buffer.getInt()];
+        buffer.get(data);
+
+        String str = new String(data, StandardCharsets.UTF_8);
+        if (encryptor != null) {
+            str = encryptor.decrypt(str);
+        }
+
+        UpdateEvent event = JsonUtil.toBean(str, UpdateEvent.class);
+        event.setId(id);
+        event.setCacheName(new String(name, StandardCharsets.UTF_8));
+        event.setUpdateMode(updateMode);
+        event.setTime(new Date(time));
+        return event;
+    }
+
+}
@@ -7,16 +7,18 @@ import com.cbcc.framework.utils.JsonUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.PreparedStatementCreator;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
-import org.springframework.jdbc.support.KeyHolder;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -29,12 +31,164 @@ public class MySQLCacheEventStore implements ICacheEventStore {
     @Value("${localcache.event.store.mysql.tableName:CacheEvent}")
     private String tableName;
 
+    /**
+     * 为每个缓存的事件分配连续序号（需要seq列和序号表，见create_mysql_tables.sql）。
+     * 警告：序号在业务事务中预留，序号表中该缓存的行锁一直持有到事务结束，同一缓存的写事务因此串行执行；
+     * 写入频繁或事务较长的缓存不宜开启，或将其拆分为分区缓存。
+     */
+    @Value("${localcache.event.store.mysql.seqEnabled:false}")
+    private boolean seqEnabled;
+
+    @Value("${localcache.event.store.mysql.seqTableName:CacheEventSeq}")
+    private String seqTableName;
+
+    @Value("${localcache.event.store.mysql.purgeBatchSize:1000}")
+    private int purgeBatchSize = 1000;
+
+    /**
+     * 清理事件时先归档到该表（结构与事件表相同），为空则直接删除
+     */
+    @Value("${localcache.event.store.mysql.archiveTableName:}")
+    private String archiveTableName;
+
     @Autowired(required = false)
     @Qualifier("cacheEventEncryptor")
     private IEncryptor encryptor;
 
     @Override
     public UpdateEvent createUpdateEvent(String cacheName, UpdateMode updateMode, Object data) {
+        return insertEvents(cacheName, updateMode, Collections.singletonList(data)).get(0);
+    }
+
+    @Override
+    public List<UpdateEvent> createUpdateEvents(String cacheName, List<Object> dataList) {
+        if (dataList.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        return insertEvents(cacheName, UpdateMode.UPDATE, dataList);
+    }
+
+    /**
+     * 使用一次JDBC批量插入写入事件，并直接在本地构建事件，无需再次查询刚插入的记录。
+     * 开启序号时，先在序号表中为该缓存预留序号，序号表的行锁保证同一缓存的事件按提交顺序连续编号（回滚不会产生空洞）。
+     */
+    private List<UpdateEvent> insertEvents(String cacheName, UpdateMode updateMode, List<Object> dataList) {
+        final List<String> strList = new ArrayList<>(dataList.size());
+        for (Object data : dataList) {
+            strList.add(serializeData(data));
+        }
+
+        final Timestamp time = new Timestamp(System.currentTimeMillis());
+        final long[] firstSeq = new long[1];
+        List<Long> ids = jdbcTemplate.execute(new ConnectionCallback<List<Long>>() {
+            @Override
+            public List<Long> doInConnection(Connection connection) throws SQLException, DataAccessException {
+                if (!seqEnabled) {
+                    return doInsertEvents(connection, cacheName, updateMode, time, strList, null);
+                }
+
+                // 非事务环境下，预留序号与插入事件必须在同一个事务中，否则序号顺序与提交顺序可能不一致
+                boolean autoCommit = connection.getAutoCommit();
+                if (autoCommit) {
+                    connection.setAutoCommit(false);
+                }
+
+                try {
+                    firstSeq[0] = reserveSeq(connection, cacheName, strList.size());
+                    List<Long> result = doInsertEvents(connection, cacheName, updateMode, time, strList, firstSeq[0]);
+                    if (autoCommit) {
+                        connection.commit();
+                    }
+
+                    return result;
+                } catch (SQLException | RuntimeException e) {
+                    if (autoCommit) {
+                        connection.rollback();
+                    }
+
+                    throw e;
+                } finally {
+                    if (autoCommit) {
+                        connection.setAutoCommit(true);
+                    }
+                }
+            }
+        });
+
+        if (ids == null || ids.size() != dataList.size()) {
+            throw new IllegalStateException("Unmatched generated keys for cache events: " + cacheName);
+        }
+
+        List<UpdateEvent> result = new ArrayList<>(dataList.size());
+        for (int i = 0, n = dataList.size(); i < n; i++) {
+            UpdateEvent event = newUpdateEvent(ids.get(i), cacheName, updateMode, time, dataList.get(i));
+            if (seqEnabled) {
+                event.setSeq(firstSeq[0] + i);
+            }
+
+            result.add(event);
+        }
+
+        return result;
+    }
+
+    private List<Long> doInsertEvents(Connection connection, String cacheName, UpdateMode updateMode,
+                                      Timestamp time, List<String> strList, Long firstSeq) throws SQLException {
+
+        String sql = firstSeq == null
+                ? "insert into " + tableName + "(cacheName, updateMode, time, data) values(?, ?, ?, ?)"
+                : "insert into " + tableName + "(cacheName, updateMode, time, data, seq) values(?, ?, ?, ?, ?)";
+
+        try (PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0, n = strList.size(); i < n; i++) {
+                ps.setString(1, cacheName);
+                ps.setString(2, updateMode.name());
+                ps.setTimestamp(3, time);
+                ps.setString(4, strList.get(i));
+                if (firstSeq != null) {
+                    ps.setLong(5, firstSeq + i);
+                }
+
+                ps.addBatch();
+            }
+
+            ps.executeBatch();
+
+            List<Long> result = new ArrayList<>(strList.size());
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                while (rs.next()) {
+                    result.add(rs.getLong(1));
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * 预留count个连续序号，返回第一个序号
+     */
+    private long reserveSeq(Connection connection, String cacheName, int count) throws SQLException {
+        String sql = "insert into " + seqTableName + "(cacheName, seq) values(?, last_insert_id(?))"
+                + " on duplicate key update seq = last_insert_id(seq + ?)";
+
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, cacheName);
+            ps.setLong(2, count);
+            ps.setLong(3, count);
+            ps.executeUpdate();
+        }
+
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("select last_insert_id()")) {
+
+            rs.next();
+            return rs.getLong(1) - count + 1;
+        }
+    }
+
+    private String serializeData(Object data) {
         UpdateEvent e = new UpdateEvent();
         e.setData(data);
         String str = JsonUtil.toJson(e);
@@ -42,25 +196,17 @@ public class MySQLCacheEventStore implements ICacheEventStore {
             str = encryptor.encrypt(str);
         }
 
-        final String str2 = str;
-        KeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbcTemplate.update(new PreparedStatementCreator() {
-                @Override
-                public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
-                    String sql = "insert into " + tableName + "(cacheName, updateMode, time, data) values(?, ?, now(3), ?)";
-                    PreparedStatement ps = (PreparedStatement) connection.prepareStatement(sql,
-                            Statement.RETURN_GENERATED_KEYS);
-
-                    ps.setString(1, cacheName);
-                    ps.setString(2, updateMode.name());
-                    ps.setString(3, str2);
-                    return ps;
-                }
-            }, keyHolder);
+        return str;
+    }
 
-        Map<String, Object> m = jdbcTemplate.queryForMap(
-                "select * from " + tableName + " where id=?", keyHolder.getKey());
-        return convertToUpdateEvent(m);
+    private UpdateEvent newUpdateEvent(Long id, String cacheName, UpdateMode updateMode, Date time, Object data) {
+        UpdateEvent event = new UpdateEvent();
+        event.setId(id);
+        event.setCacheName(cacheName);
+        event.setUpdateMode(updateMode);
+        event.setTime(time);
+        event.setData(data);
+        return event;
     }
 
     private UpdateEvent convertToUpdateEvent(Map<String, Object> m) {
@@ -82,6 +228,12 @@ public class MySQLCacheEventStore implements ICacheEventStore {
         event.setCacheName((String) m.get("cacheName"));
         event.setUpdateMode(UpdateMode.valueOf((String) m.get("updateMode")));
         event.setTime((Date) m.get("time"));
+
+        Object seq = m.get("seq");
+        if (seq != null) {
+            event.setSeq(Long.valueOf(seq.toString()));
+        }
+
         return event;
     }
 
@@ -110,6 +262,62 @@ public class MySQLCacheEventStore implements ICacheEventStore {
         return result;
     }
 
+    @Override
+    public List<UpdateEvent> getUpdateEventListBySeq(String cacheName, Long afterSeq, int limit) {
+        List<Map<String, Object>> list = jdbcTemplate.queryForList(
+                "select * from " + tableName + " where cacheName=? and seq>? order by seq limit ?",
+                    cacheName, afterSeq == null ? 0L : afterSeq, limit);
+
+        List<UpdateEvent> result = new ArrayList<>();
+        for (Map<String, Object> m : list) {
+            UpdateEvent e = convertToUpdateEvent(m);
+            if (e != null) {
+                result.add(e);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * 将eventId对应的事件标记为FLUSH作为清理位置的墓碑，再分批删除（或归档）之前的事件，
+     * 这样afterId小于eventId的节点通过detectsFlushAfter会重建缓存，而不会在缺失事件的情况下追赶。
+     */
+    @Override
+    public int purgeEventsBefore(String cacheName, Long eventId) {
+        if (eventId == null) {
+            return 0;
+        }
+
+        int n = jdbcTemplate.update("update " + tableName + " set updateMode=? where cacheName=? and id=?",
+                UpdateMode.FLUSH.name(), cacheName, eventId);
+        if (n == 0) {
+            return 0;
+        }
+
+        int total = 0;
+        List<Long> ids;
+        do {
+            ids = jdbcTemplate.queryForList(
+                    "select id from " + tableName + " where cacheName=? and id<? order by id limit ?",
+                    Long.class, cacheName, eventId, purgeBatchSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+
+            Long maxId = ids.get(ids.size() - 1);
+            if (archiveTableName != null && !archiveTableName.isEmpty()) {
+                jdbcTemplate.update("insert ignore into " + archiveTableName
+                        + " select * from " + tableName + " where cacheName=? and id<=?", cacheName, maxId);
+            }
+
+            total += jdbcTemplate.update("delete from " + tableName + " where cacheName=? and id<=?",
+                    cacheName, maxId);
+        } while (ids.size() >= purgeBatchSize);
+
+        return total;
+    }
+
     @Override
     public boolean detectsFlushAfter(String cacheName, Long afterId) {
         List<Map<String, Object>> list = jdbcTemplate.queryForList(
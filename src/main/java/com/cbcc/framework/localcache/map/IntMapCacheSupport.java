@@ -0,0 +1,53 @@
+package com.cbcc.framework.localcache.map;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * 以int为键的MapCacheSupport，缓存对象与LongMapCacheSupport相同（LongMapCache.get(long)可直接传入int），
+ * 快照中的键只占4个字节。更新同样使用LongMapUpdate，超出int范围的键会被拒绝。
+ */
+public abstract class IntMapCacheSupport<V> extends LongMapCacheSupport<V> {
+
+    public interface IntEntryConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    protected IntMapCacheSupport(Class<V> valueClass) {
+        super(valueClass);
+    }
+
+    /**
+     * 从数据源加载全部条目，checkpoint的含义同ICacheSupport.initCache
+     */
+    protected abstract void loadAllInt(boolean checkpoint, IntEntryConsumer<V> consumer);
+
+    @Override
+    protected final void loadAll(boolean checkpoint, final LongMapCache.EntryConsumer<V> consumer) {
+        loadAllInt(checkpoint, new IntEntryConsumer<V>() {
+            @Override
+            public void accept(int key, V value) {
+                consumer.accept(key, value);
+            }
+        });
+    }
+
+    @Override
+    protected void checkKey(long key) {
+        if (key != (int) key) {
+            throw new IllegalArgumentException("The key exceeds the int range: " + key);
+        }
+    }
+
+    @Override
+    protected void writeKey(DataOutputStream out, long key) throws IOException {
+        out.writeInt((int) key);
+    }
+
+    @Override
+    protected long readKey(DataInputStream in) throws IOException {
+        return in.readInt();
+    }
+
+}
@@ -0,0 +1,241 @@
+package com.cbcc.framework.localcache.map;
+
+import com.cbcc.framework.localcache.CombinableDigest;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 以long为键的缓存对象，对应用只读，由框架通过更新事件修改。
+ *
+ * 开放寻址（线性探测）哈希表，键不装箱；删除时回移后续条目，不留墓碑。
+ * 读取使用StampedLock乐观读，只有与更新并发时才退化为读锁；更新由框架串行执行。
+ */
+public class LongMapCache<V> {
+
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final StampedLock lock = new StampedLock();
+    private final CombinableDigest digest = new CombinableDigest();
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    LongMapCache(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    public V get(long key) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            Object value = find(keys, values, key);
+            if (lock.validate(stamp)) {
+                return (V) value;
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return (V) find(keys, values, key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int n = size;
+        if (stamp != 0L && lock.validate(stamp)) {
+            return n;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 返回所有键的副本，顺序不确定
+     */
+    public long[] keys() {
+        long stamp = lock.readLock();
+        try {
+            long[] result = new long[size];
+            int n = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    result[n++] = keys[i];
+                }
+            }
+
+            return result;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 遍历期间持有读锁，action中不要执行耗时操作
+     */
+    public void forEach(EntryConsumer<? super V> action) {
+        long stamp = lock.readLock();
+        try {
+            for (int i = 0; i < values.length; i++) {
+                Object value = values[i];
+                if (value != null) {
+                    action.accept(keys[i], (V) value);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    V put(long key, V value) {
+        long stamp = lock.writeLock();
+        try {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length << 1);
+            }
+
+            int mask = keys.length - 1;
+            int i = index(key, mask);
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    Object previous = values[i];
+                    values[i] = value;
+                    return (V) previous;
+                }
+
+                i = (i + 1) & mask;
+            }
+
+            keys[i] = key;
+            values[i] = value;
+            size++;
+            return null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    V remove(long key) {
+        long stamp = lock.writeLock();
+        try {
+            int mask = keys.length - 1;
+            int i = index(key, mask);
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    Object previous = values[i];
+                    delete(i, mask);
+                    size--;
+                    return (V) previous;
+                }
+
+                i = (i + 1) & mask;
+            }
+
+            return null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    CombinableDigest getDigest() {
+        return digest;
+    }
+
+    /**
+     * 删除槽位i，并将探测链上后续的条目回移，保证查找不会提前遇到空槽
+     */
+    private void delete(int i, int mask) {
+        values[i] = null;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (values[j] == null) {
+                return;
+            }
+
+            int k = index(keys[j], mask);
+            boolean reachable = i <= j ? (i < k && k <= j) : (i < k || k <= j);
+            if (!reachable) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                values[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        long[] newKeys = new long[capacity];
+        Object[] newValues = new Object[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int j = index(oldKeys[i], mask);
+                while (newValues[j] != null) {
+                    j = (j + 1) & mask;
+                }
+
+                newKeys[j] = oldKeys[i];
+                newValues[j] = oldValues[i];
+            }
+        }
+
+        keys = newKeys;
+        values = newValues;
+    }
+
+    /**
+     * 乐观读时keys和values可能来自不同版本，结果由调用方通过validate丢弃，这里只需保证不越界、不死循环
+     */
+    private static Object find(long[] keys, Object[] values, long key) {
+        if (keys.length != values.length) {
+            return null;
+        }
+
+        int mask = keys.length - 1;
+        int i = index(key, mask);
+        for (int n = 0; n <= mask; n++) {
+            Object value = values[i];
+            if (value == null) {
+                return null;
+            }
+
+            if (keys[i] == key) {
+                return value;
+            }
+
+            i = (i + 1) & mask;
+        }
+
+        return null;
+    }
+
+    private static int index(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+}
@@ -0,0 +1,191 @@
+package com.cbcc.framework.localcache.map;
+
+import com.cbcc.framework.localcache.CombinableDigest;
+import com.cbcc.framework.localcache.IIncrementalDigestCacheSupport;
+import com.cbcc.framework.localcache.ISnapshotableCacheSupport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+
+/**
+ * 以long为键的MapCacheSupport，键在缓存、更新和快照中都不装箱，通过LongMapUpdate.put/remove更新缓存。
+ *
+ * 警告：默认的条目哈希基于值的JSON，值的JSON必须稳定，否则请覆盖hashEntry。
+ */
+public abstract class LongMapCacheSupport<V>
+        implements ISnapshotableCacheSupport<LongMapCache<V>>, IIncrementalDigestCacheSupport<LongMapCache<V>> {
+
+    private static final int SNAPSHOT_MAGIC = 0x4C434C4D;
+
+    private static class UndoEntry {
+        private final long key;
+        private final Object previous;
+
+        UndoEntry(long key, Object previous) {
+            this.key = key;
+            this.previous = previous;
+        }
+    }
+
+    protected final ObjectMapper objectMapper = MapCacheJson.OBJECT_MAPPER;
+
+    private final Class<V> valueClass;
+
+    protected LongMapCacheSupport(Class<V> valueClass) {
+        this.valueClass = valueClass;
+    }
+
+    /**
+     * 从数据源加载全部条目，checkpoint的含义同ICacheSupport.initCache
+     */
+    protected abstract void loadAll(boolean checkpoint, LongMapCache.EntryConsumer<V> consumer);
+
+    @Override
+    public LongMapCache<V> initCache(boolean checkpoint) {
+        final LongMapCache<V> cache = new LongMapCache<>(16);
+        loadAll(checkpoint, new LongMapCache.EntryConsumer<V>() {
+            @Override
+            public void accept(long key, V value) {
+                put(cache, key, value);
+            }
+        });
+
+        return cache;
+    }
+
+    @Override
+    public String digestCache(LongMapCache<V> cache) {
+        final CombinableDigest digest = new CombinableDigest();
+        cache.forEach(new LongMapCache.EntryConsumer<V>() {
+            @Override
+            public void accept(long key, V value) {
+                digest.add(hashEntry(key, value));
+            }
+        });
+
+        return digest.getDigest();
+    }
+
+    @Override
+    public String currentDigest(LongMapCache<V> cache) {
+        return cache.getDigest().getDigest();
+    }
+
+    @Override
+    public Object updateCache(LongMapCache<V> cache, Object update) {
+        LongMapUpdate u = (LongMapUpdate) update;
+        checkKey(u.getKey());
+        V previous = u.isRemoved() ? remove(cache, u.getKey()) : put(cache, u.getKey(), valueClass.cast(u.getValue()));
+        return new UndoEntry(u.getKey(), previous);
+    }
+
+    @Override
+    public void rollbackCache(LongMapCache<V> cache, Object undo) {
+        UndoEntry u = (UndoEntry) undo;
+        if (u.previous == null) {
+            remove(cache, u.key);
+        } else {
+            put(cache, u.key, valueClass.cast(u.previous));
+        }
+    }
+
+    @Override
+    public void serializeCache(LongMapCache<V> cache, OutputStream output) {
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(cache.size());
+
+            // 条目数仅用于预分配容量，每个条目前写入标记，以false结束
+            final IOException[] failure = new IOException[1];
+            cache.forEach(new LongMapCache.EntryConsumer<V>() {
+                @Override
+                public void accept(long key, V value) {
+                    if (failure[0] != null) {
+                        return;
+                    }
+
+                    try {
+                        out.writeBoolean(true);
+                        writeKey(out, key);
+                        MapCacheSupport.writeBytes(out, objectMapper.writeValueAsBytes(value));
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+
+            out.writeBoolean(false);
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public LongMapCache<V> deserializeCache(InputStream input) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Unknown snapshot format");
+            }
+
+            LongMapCache<V> cache = new LongMapCache<>(in.readInt());
+            while (in.readBoolean()) {
+                long key = readKey(in);
+                V value = objectMapper.readValue(MapCacheSupport.readBytes(in), valueClass);
+                put(cache, key, value);
+            }
+
+            return cache;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 条目的哈希值，要求与JVM无关
+     */
+    protected long hashEntry(long key, V value) {
+        try {
+            return CombinableDigest.hash(objectMapper.writeValueAsString(value)) * 31 + key;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected void checkKey(long key) {
+    }
+
+    protected void writeKey(DataOutputStream out, long key) throws IOException {
+        out.writeLong(key);
+    }
+
+    protected long readKey(DataInputStream in) throws IOException {
+        return in.readLong();
+    }
+
+    private V put(LongMapCache<V> cache, long key, V value) {
+        V previous = cache.put(key, value);
+        if (previous != null) {
+            cache.getDigest().remove(hashEntry(key, previous));
+        }
+
+        cache.getDigest().add(hashEntry(key, value));
+        return previous;
+    }
+
+    private V remove(LongMapCache<V> cache, long key) {
+        V previous = cache.remove(key);
+        if (previous != null) {
+            cache.getDigest().remove(hashEntry(key, previous));
+        }
+
+        return previous;
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.cbcc.framework.localcache.map;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * LongMapCacheSupport和IntMapCacheSupport的更新事件：写入或删除一个条目
+ */
+@Getter
+@Setter
+public class LongMapUpdate {
+
+    private long key;
+
+    @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS, include = JsonTypeInfo.As.PROPERTY, property = "clazz")
+    private Object value;
+
+    private boolean removed;
+
+    public static LongMapUpdate put(long key, Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("The value required");
+        }
+
+        LongMapUpdate update = new LongMapUpdate();
+        update.setKey(key);
+        update.setValue(value);
+        return update;
+    }
+
+    public static LongMapUpdate remove(long key) {
+        LongMapUpdate update = new LongMapUpdate();
+        update.setKey(key);
+        update.setRemoved(true);
+        return update;
+    }
+
+}
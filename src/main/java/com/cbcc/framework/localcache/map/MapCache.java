@@ -0,0 +1,70 @@
+package com.cbcc.framework.localcache.map;
+
+import com.cbcc.framework.localcache.CombinableDigest;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * MapCacheSupport的缓存对象，对应用只读，由框架通过更新事件修改
+ */
+public class MapCache<K, V> {
+
+    private final ConcurrentHashMap<K, V> map;
+    private final CombinableDigest digest;
+
+    MapCache(int expectedSize) {
+        this.map = new ConcurrentHashMap<>(Math.max(expectedSize, 16));
+        this.digest = new CombinableDigest();
+    }
+
+    MapCache(MapCache<K, V> source) {
+        this.map = new ConcurrentHashMap<>(source.map);
+        this.digest = source.digest.copy();
+    }
+
+    public V get(K key) {
+        return map.get(key);
+    }
+
+    public boolean containsKey(K key) {
+        return map.containsKey(key);
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(map.keySet());
+    }
+
+    public Collection<V> values() {
+        return Collections.unmodifiableCollection(map.values());
+    }
+
+    public Map<K, V> asMap() {
+        return Collections.unmodifiableMap(map);
+    }
+
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        map.forEach(action);
+    }
+
+    V put(K key, V value) {
+        return map.put(key, value);
+    }
+
+    V remove(K key) {
+        return map.remove(key);
+    }
+
+    CombinableDigest getDigest() {
+        return digest;
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.cbcc.framework.localcache.map;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * map包内各CacheSupport共用的ObjectMapper，配置与JsonUtil一致。ObjectMapper线程安全，
+ * 共用一个实例可以共享序列化器缓存，避免每个CacheSupport各自预热。
+ */
+final class MapCacheJson {
+
+    static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private MapCacheJson() {
+    }
+
+}
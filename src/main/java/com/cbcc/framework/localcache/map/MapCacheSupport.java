@@ -0,0 +1,219 @@
+package com.cbcc.framework.localcache.map;
+
+import com.cbcc.framework.localcache.CombinableDigest;
+import com.cbcc.framework.localcache.IIncrementalDigestCacheSupport;
+import com.cbcc.framework.localcache.ISnapshotableCacheSupport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * 键值对缓存的通用实现，应用只需实现loadAll从数据源加载全部条目，通过MapUpdate.put/remove更新缓存：
+ * 1. updateCache返回被覆盖的旧值作为回滚日志；
+ * 2. 摘要为所有条目哈希的CombinableDigest，随更新增量维护；
+ * 3. 快照为二进制格式：String/Long/Integer键直接写入，其它键和值写入JSON字节。
+ *
+ * 警告：默认的条目哈希基于键和值的JSON，值的JSON必须稳定（例如不能包含无序的HashMap），否则请覆盖hashEntry。
+ */
+public abstract class MapCacheSupport<K, V>
+        implements ISnapshotableCacheSupport<MapCache<K, V>>, IIncrementalDigestCacheSupport<MapCache<K, V>> {
+
+    private static final int SNAPSHOT_MAGIC = 0x4C434D50;
+
+    private static class UndoEntry {
+        private final Object key;
+        private final Object previous;
+
+        UndoEntry(Object key, Object previous) {
+            this.key = key;
+            this.previous = previous;
+        }
+    }
+
+    protected final ObjectMapper objectMapper = MapCacheJson.OBJECT_MAPPER;
+
+    private final Class<K> keyClass;
+    private final Class<V> valueClass;
+
+    protected MapCacheSupport(Class<K> keyClass, Class<V> valueClass) {
+        this.keyClass = keyClass;
+        this.valueClass = valueClass;
+    }
+
+    /**
+     * 从数据源加载全部条目，checkpoint的含义同ICacheSupport.initCache
+     */
+    protected abstract void loadAll(boolean checkpoint, BiConsumer<K, V> consumer);
+
+    @Override
+    public MapCache<K, V> initCache(boolean checkpoint) {
+        final MapCache<K, V> cache = new MapCache<>(16);
+        loadAll(checkpoint, new BiConsumer<K, V>() {
+            @Override
+            public void accept(K key, V value) {
+                put(cache, key, value);
+            }
+        });
+
+        return cache;
+    }
+
+    @Override
+    public String digestCache(MapCache<K, V> cache) {
+        final CombinableDigest digest = new CombinableDigest();
+        cache.forEach(new BiConsumer<K, V>() {
+            @Override
+            public void accept(K key, V value) {
+                digest.add(hashEntry(key, value));
+            }
+        });
+
+        return digest.getDigest();
+    }
+
+    @Override
+    public String currentDigest(MapCache<K, V> cache) {
+        return cache.getDigest().getDigest();
+    }
+
+    /**
+     * 返回缓存的副本（条目对象共享），子类实现IVersionedCacheSupport即可开启多版本模式
+     */
+    public MapCache<K, V> copyCache(MapCache<K, V> cache) {
+        return new MapCache<>(cache);
+    }
+
+    @Override
+    public Object updateCache(MapCache<K, V> cache, Object update) {
+        MapUpdate u = (MapUpdate) update;
+        K key = keyClass.cast(u.getKey());
+        V previous = u.isRemoved() ? remove(cache, key) : put(cache, key, valueClass.cast(u.getValue()));
+        return new UndoEntry(key, previous);
+    }
+
+    @Override
+    public void rollbackCache(MapCache<K, V> cache, Object undo) {
+        UndoEntry u = (UndoEntry) undo;
+        K key = keyClass.cast(u.key);
+        if (u.previous == null) {
+            remove(cache, key);
+        } else {
+            put(cache, key, valueClass.cast(u.previous));
+        }
+    }
+
+    @Override
+    public void serializeCache(MapCache<K, V> cache, OutputStream output) {
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(cache.size());
+
+            // 条目数仅用于预分配容量，每个条目前写入标记，以false结束
+            for (Map.Entry<K, V> entry : cache.asMap().entrySet()) {
+                out.writeBoolean(true);
+                writeKey(out, entry.getKey());
+                writeBytes(out, objectMapper.writeValueAsBytes(entry.getValue()));
+            }
+
+            out.writeBoolean(false);
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public MapCache<K, V> deserializeCache(InputStream input) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Unknown snapshot format");
+            }
+
+            MapCache<K, V> cache = new MapCache<>(in.readInt());
+            while (in.readBoolean()) {
+                K key = readKey(in);
+                V value = objectMapper.readValue(readBytes(in), valueClass);
+                put(cache, key, value);
+            }
+
+            return cache;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 条目的哈希值，要求与JVM无关
+     */
+    protected long hashEntry(K key, V value) {
+        try {
+            return CombinableDigest.hash(objectMapper.writeValueAsString(key)) * 31
+                    + CombinableDigest.hash(objectMapper.writeValueAsString(value));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private V put(MapCache<K, V> cache, K key, V value) {
+        V previous = cache.put(key, value);
+        if (previous != null) {
+            cache.getDigest().remove(hashEntry(key, previous));
+        }
+
+        cache.getDigest().add(hashEntry(key, value));
+        return previous;
+    }
+
+    private V remove(MapCache<K, V> cache, K key) {
+        V previous = cache.remove(key);
+        if (previous != null) {
+            cache.getDigest().remove(hashEntry(key, previous));
+        }
+
+        return previous;
+    }
+
+    private void writeKey(DataOutputStream out, K key) throws IOException {
+        if (keyClass == String.class) {
+            writeBytes(out, ((String) key).getBytes(StandardCharsets.UTF_8));
+        } else if (keyClass == Long.class) {
+            out.writeLong((Long) key);
+        } else if (keyClass == Integer.class) {
+            out.writeInt((Integer) key);
+        } else {
+            writeBytes(out, objectMapper.writeValueAsBytes(key));
+        }
+    }
+
+    private K readKey(DataInputStream in) throws IOException {
+        Object key;
+        if (keyClass == String.class) {
+            key = new String(readBytes(in), StandardCharsets.UTF_8);
+        } else if (keyClass == Long.class) {
+            key = in.readLong();
+        } else if (keyClass == Integer.class) {
+            key = in.readInt();
+        } else {
+            key = objectMapper.readValue(readBytes(in), keyClass);
+        }
+
+        return keyClass.cast(key);
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.cbcc.framework.localcache.map;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * MapCacheSupport的更新事件：写入或删除一个条目
+ */
+@Getter
+@Setter
+public class MapUpdate {
+
+    @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS, include = JsonTypeInfo.As.PROPERTY, property = "clazz")
+    private Object key;
+
+    @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS, include = JsonTypeInfo.As.PROPERTY, property = "clazz")
+    private Object value;
+
+    private boolean removed;
+
+    public static MapUpdate put(Object key, Object value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("The key and value required");
+        }
+
+        MapUpdate update = new MapUpdate();
+        update.setKey(key);
+        update.setValue(value);
+        return update;
+    }
+
+    public static MapUpdate remove(Object key) {
+        if (key == null) {
+            throw new IllegalArgumentException("The key required");
+        }
+
+        MapUpdate update = new MapUpdate();
+        update.setKey(key);
+        update.setRemoved(true);
+        return update;
+    }
+
+}
@@ -0,0 +1,519 @@
+package com.cbcc.framework.localcache.map;
+
+import com.cbcc.framework.localcache.CombinableDigest;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+
+/**
+ * 以long为键、值存放在堆外的缓存对象，对应用只读，由框架通过更新事件修改。
+ *
+ * 值按记录 [key(8) + len(4) + bytes] 追加写入堆外的块（direct ByteBuffer，或映射的快照文件），记录写入后不再修改；
+ * 索引为两个long数组（开放寻址），数百万条目在堆上也只有少数几个对象，不会增加GC的扫描负担。
+ * 更新和删除留下的垃圾超过有效数据时整体压缩。读取时按需解码值。
+ *
+ * 快照格式：magic(4) + 条目数(4) + 记录总字节数(8) + 记录，记录部分与内存中的块格式相同，因此可以直接映射。
+ */
+public class OffHeapLongMapCache<V> {
+
+    static final int SNAPSHOT_MAGIC = 0x4C434F48;
+    static final int HEADER_SIZE = 16;
+
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final int MIN_CAPACITY = 16;
+    private static final long EMPTY = -1L;
+
+    public interface RecordConsumer {
+        /**
+         * value为只读的记录值，position到limit之间为值的字节
+         */
+        void accept(long key, ByteBuffer value);
+    }
+
+    private final StampedLock lock = new StampedLock();
+    private final CombinableDigest digest = new CombinableDigest();
+
+    private final int chunkSize;
+    private final Function<ByteBuffer, V> decoder;
+
+    private long[] keys;
+    private long[] addresses;
+    private int size;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private ByteBuffer tail;
+    private int tailPosition;
+    private long liveBytes;
+    private long garbageBytes;
+
+    OffHeapLongMapCache(int expectedSize, int chunkSize, Function<ByteBuffer, V> decoder) {
+        this.chunkSize = chunkSize;
+        this.decoder = decoder;
+
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+
+        keys = new long[capacity];
+        addresses = new long[capacity];
+        Arrays.fill(addresses, EMPTY);
+    }
+
+    public V get(long key) {
+        ByteBuffer value = getValue(key);
+        return value == null ? null : decoder.apply(value);
+    }
+
+    public boolean containsKey(long key) {
+        return getValue(key) != null;
+    }
+
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int n = size;
+        if (stamp != 0L && lock.validate(stamp)) {
+            return n;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 堆外存储占用的字节数（包括尚未压缩的垃圾）
+     */
+    public long getStorageBytes() {
+        long stamp = lock.readLock();
+        try {
+            return liveBytes + garbageBytes;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 返回所有键的副本，顺序不确定
+     */
+    public long[] keys() {
+        long stamp = lock.readLock();
+        try {
+            long[] result = new long[size];
+            int n = 0;
+            for (int i = 0; i < addresses.length; i++) {
+                if (addresses[i] != EMPTY) {
+                    result[n++] = keys[i];
+                }
+            }
+
+            return result;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 遍历期间持有读锁，每个值都会被解码
+     */
+    public void forEach(final LongMapCache.EntryConsumer<? super V> action) {
+        forEachRecord(new RecordConsumer() {
+            @Override
+            public void accept(long key, ByteBuffer value) {
+                action.accept(key, decoder.apply(value));
+            }
+        });
+    }
+
+    /**
+     * 遍历原始记录，不解码值，遍历期间持有读锁
+     */
+    public void forEachRecord(RecordConsumer action) {
+        long stamp = lock.readLock();
+        try {
+            for (int i = 0; i < addresses.length; i++) {
+                if (addresses[i] != EMPTY) {
+                    action.accept(keys[i], record(chunks, addresses[i]));
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 记录写入后不再修改（压缩时写入新的块），因此乐观读得到的块和偏移经validate确认后，可以在锁外读取
+     */
+    private ByteBuffer getValue(long key) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                ByteBuffer[] c = chunks;
+                long address = find(keys, addresses, key);
+                if (lock.validate(stamp)) {
+                    return address == EMPTY ? null : record(c, address);
+                }
+            } catch (RuntimeException e) {
+                // 与更新并发时可能读到不一致的数组，改用读锁
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            long address = find(keys, addresses, key);
+            return address == EMPTY ? null : record(chunks, address);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 写入条目，返回旧值的字节（没有旧值时返回null）
+     */
+    byte[] put(long key, byte[] value) {
+        long stamp = lock.writeLock();
+        try {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length << 1);
+            }
+
+            long address = append(key, ByteBuffer.wrap(value));
+            int mask = keys.length - 1;
+            int i = index(key, mask);
+            while (addresses[i] != EMPTY) {
+                if (keys[i] == key) {
+                    byte[] previous = release(addresses[i]);
+                    addresses[i] = address;
+                    compactIfNecessary();
+                    return previous;
+                }
+
+                i = (i + 1) & mask;
+            }
+
+            keys[i] = key;
+            addresses[i] = address;
+            size++;
+            return null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 删除条目，返回旧值的字节（没有旧值时返回null）
+     */
+    byte[] remove(long key) {
+        long stamp = lock.writeLock();
+        try {
+            int mask = keys.length - 1;
+            int i = index(key, mask);
+            while (addresses[i] != EMPTY) {
+                if (keys[i] == key) {
+                    byte[] previous = release(addresses[i]);
+                    delete(i, mask);
+                    size--;
+                    compactIfNecessary();
+                    return previous;
+                }
+
+                i = (i + 1) & mask;
+            }
+
+            return null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    CombinableDigest getDigest() {
+        return digest;
+    }
+
+    void writeTo(OutputStream output) throws IOException {
+        long stamp = lock.readLock();
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(size);
+            out.writeLong(liveBytes);
+
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < addresses.length; i++) {
+                if (addresses[i] == EMPTY) {
+                    continue;
+                }
+
+                ByteBuffer value = record(chunks, addresses[i]);
+                int len = value.remaining();
+                if (bytes.length < len) {
+                    bytes = new byte[Math.max(len, bytes.length * 2)];
+                }
+
+                value.get(bytes, 0, len);
+                out.writeLong(keys[i]);
+                out.writeInt(len);
+                out.write(bytes, 0, len);
+            }
+
+            out.flush();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 从快照流读取，记录直接复制到堆外的块，不创建值对象
+     */
+    static <V> OffHeapLongMapCache<V> readFrom(InputStream input, int chunkSize,
+                                               Function<ByteBuffer, V> decoder) throws IOException {
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+        if (in.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Unknown snapshot format");
+        }
+
+        int count = in.readInt();
+        long total = in.readLong();
+
+        OffHeapLongMapCache<V> cache = new OffHeapLongMapCache<>(count, chunkSize, decoder);
+        byte[] bytes = new byte[256];
+        long read = 0;
+        while (read < total) {
+            long key = in.readLong();
+            int len = in.readInt();
+            if (bytes.length < len) {
+                bytes = new byte[Math.max(len, bytes.length * 2)];
+            }
+
+            in.readFully(bytes, 0, len);
+            cache.put(key, ByteBuffer.wrap(bytes, 0, len));
+            read += RECORD_HEADER_SIZE + len;
+        }
+
+        return cache;
+    }
+
+    /**
+     * 只读映射快照文件作为第一个块，只需扫描记录重建索引；之后的更新写入新的堆外块
+     */
+    static <V> OffHeapLongMapCache<V> map(File file, int chunkSize, Function<ByteBuffer, V> decoder) throws IOException {
+        MappedByteBuffer mapped;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("The snapshot is too large to map: " + length);
+            }
+
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+
+        if (mapped.capacity() < HEADER_SIZE || mapped.getInt(0) != SNAPSHOT_MAGIC) {
+            throw new IOException("Unknown snapshot format: " + file);
+        }
+
+        int count = mapped.getInt(4);
+        long total = mapped.getLong(8);
+        if (HEADER_SIZE + total > mapped.capacity()) {
+            throw new IOException("Truncated snapshot: " + file);
+        }
+
+        mapped.position(HEADER_SIZE);
+        mapped.limit((int) (HEADER_SIZE + total));
+        ByteBuffer chunk = mapped.slice();
+
+        OffHeapLongMapCache<V> cache = new OffHeapLongMapCache<>(count, chunkSize, decoder);
+        cache.chunks = new ByteBuffer[]{chunk};
+        cache.liveBytes = total;
+
+        int mask = cache.keys.length - 1;
+        int offset = 0;
+        while (offset < total) {
+            long key = chunk.getLong(offset);
+            int len = chunk.getInt(offset + 8);
+            int i = index(key, mask);
+            while (cache.addresses[i] != EMPTY) {
+                if (cache.keys[i] == key) {
+                    throw new IOException("Duplicated key in snapshot: " + key);
+                }
+
+                i = (i + 1) & mask;
+            }
+
+            cache.keys[i] = key;
+            cache.addresses[i] = offset;
+            cache.size++;
+            offset += RECORD_HEADER_SIZE + len;
+        }
+
+        return cache;
+    }
+
+    private void put(long key, ByteBuffer value) {
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length << 1);
+        }
+
+        long address = append(key, value);
+        int mask = keys.length - 1;
+        int i = index(key, mask);
+        while (addresses[i] != EMPTY) {
+            if (keys[i] == key) {
+                release(addresses[i]);
+                addresses[i] = address;
+                return;
+            }
+
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        addresses[i] = address;
+        size++;
+    }
+
+    private long append(long key, ByteBuffer value) {
+        int len = value.remaining();
+        int recordSize = RECORD_HEADER_SIZE + len;
+        if (tail == null || tail.capacity() - tailPosition < recordSize) {
+            tail = ByteBuffer.allocateDirect(Math.max(chunkSize, recordSize));
+            tailPosition = 0;
+
+            ByteBuffer[] newChunks = Arrays.copyOf(chunks, chunks.length + 1);
+            newChunks[chunks.length] = tail;
+            chunks = newChunks;
+        }
+
+        int offset = tailPosition;
+        tail.putLong(offset, key);
+        tail.putInt(offset + 8, len);
+        ByteBuffer target = tail.duplicate();
+        target.position(offset + RECORD_HEADER_SIZE);
+        target.put(value.duplicate());
+
+        tailPosition += recordSize;
+        liveBytes += recordSize;
+        return ((long) (chunks.length - 1) << 32) | offset;
+    }
+
+    private byte[] release(long address) {
+        ByteBuffer value = record(chunks, address);
+        byte[] bytes = new byte[value.remaining()];
+        value.get(bytes);
+
+        liveBytes -= RECORD_HEADER_SIZE + bytes.length;
+        garbageBytes += RECORD_HEADER_SIZE + bytes.length;
+        return bytes;
+    }
+
+    private void compactIfNecessary() {
+        if (garbageBytes <= chunkSize || garbageBytes <= liveBytes) {
+            return;
+        }
+
+        ByteBuffer[] oldChunks = chunks;
+        chunks = new ByteBuffer[0];
+        tail = null;
+        tailPosition = 0;
+        liveBytes = 0L;
+        garbageBytes = 0L;
+
+        for (int i = 0; i < addresses.length; i++) {
+            if (addresses[i] != EMPTY) {
+                addresses[i] = append(keys[i], record(oldChunks, addresses[i]));
+            }
+        }
+    }
+
+    private void delete(int i, int mask) {
+        addresses[i] = EMPTY;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (addresses[j] == EMPTY) {
+                return;
+            }
+
+            int k = index(keys[j], mask);
+            boolean reachable = i <= j ? (i < k && k <= j) : (i < k || k <= j);
+            if (!reachable) {
+                keys[i] = keys[j];
+                addresses[i] = addresses[j];
+                addresses[j] = EMPTY;
+                i = j;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldAddresses = addresses;
+        long[] newKeys = new long[capacity];
+        long[] newAddresses = new long[capacity];
+        Arrays.fill(newAddresses, EMPTY);
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldAddresses.length; i++) {
+            if (oldAddresses[i] != EMPTY) {
+                int j = index(oldKeys[i], mask);
+                while (newAddresses[j] != EMPTY) {
+                    j = (j + 1) & mask;
+                }
+
+                newKeys[j] = oldKeys[i];
+                newAddresses[j] = oldAddresses[i];
+            }
+        }
+
+        keys = newKeys;
+        addresses = newAddresses;
+    }
+
+    private static ByteBuffer record(ByteBuffer[] chunks, long address) {
+        ByteBuffer chunk = chunks[(int) (address >>> 32)];
+        int offset = (int) address;
+        int len = chunk.getInt(offset + 8);
+
+        ByteBuffer value = chunk.asReadOnlyBuffer();
+        value.limit(offset + RECORD_HEADER_SIZE + len);
+        value.position(offset + RECORD_HEADER_SIZE);
+        return value;
+    }
+
+    private static long find(long[] keys, long[] addresses, long key) {
+        if (keys.length != addresses.length) {
+            return EMPTY;
+        }
+
+        int mask = keys.length - 1;
+        int i = index(key, mask);
+        for (int n = 0; n <= mask; n++) {
+            long address = addresses[i];
+            if (address == EMPTY) {
+                return EMPTY;
+            }
+
+            if (keys[i] == key) {
+                return address;
+            }
+
+            i = (i + 1) & mask;
+        }
+
+        return EMPTY;
+    }
+
+    private static int index(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+}
@@ -0,0 +1,192 @@
+package com.cbcc.framework.localcache.map;
+
+import com.cbcc.framework.localcache.CombinableDigest;
+import com.cbcc.framework.localcache.IIncrementalDigestCacheSupport;
+import com.cbcc.framework.localcache.IMappableCacheSupport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+/**
+ * 值存放在堆外的LongMapCacheSupport，适用于条目很多的缓存，通过LongMapUpdate.put/remove更新缓存。
+ * 值默认编码为JSON，可覆盖encodeValue/decodeValue使用更紧凑的定长布局。
+ *
+ * 本地磁盘上有快照副本时（LocalCacheSnapshotPersister），重建缓存直接映射快照文件，无需反序列化。
+ * 条目哈希基于键和值的编码字节，encodeValue必须是确定的。
+ */
+public abstract class OffHeapLongMapCacheSupport<V> implements IMappableCacheSupport<OffHeapLongMapCache<V>>,
+        IIncrementalDigestCacheSupport<OffHeapLongMapCache<V>> {
+
+    private static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    protected final ObjectMapper objectMapper = MapCacheJson.OBJECT_MAPPER;
+
+    private final Class<V> valueClass;
+    private final int chunkSize;
+
+    private final Function<ByteBuffer, V> decoder = new Function<ByteBuffer, V>() {
+        @Override
+        public V apply(ByteBuffer buffer) {
+            return decodeValue(buffer);
+        }
+    };
+
+    protected OffHeapLongMapCacheSupport(Class<V> valueClass) {
+        this(valueClass, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * chunkSize为每个堆外块的字节数
+     */
+    protected OffHeapLongMapCacheSupport(Class<V> valueClass, int chunkSize) {
+        this.valueClass = valueClass;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * 从数据源加载全部条目，checkpoint的含义同ICacheSupport.initCache
+     */
+    protected abstract void loadAll(boolean checkpoint, LongMapCache.EntryConsumer<V> consumer);
+
+    protected byte[] encodeValue(V value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * buffer为只读的值，position到limit之间为encodeValue的结果
+     */
+    protected V decodeValue(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        try {
+            return objectMapper.readValue(bytes, valueClass);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public OffHeapLongMapCache<V> initCache(boolean checkpoint) {
+        final OffHeapLongMapCache<V> cache = new OffHeapLongMapCache<>(16, chunkSize, decoder);
+        loadAll(checkpoint, new LongMapCache.EntryConsumer<V>() {
+            @Override
+            public void accept(long key, V value) {
+                put(cache, key, encodeValue(value));
+            }
+        });
+
+        return cache;
+    }
+
+    @Override
+    public String digestCache(OffHeapLongMapCache<V> cache) {
+        return computeDigest(cache).getDigest();
+    }
+
+    @Override
+    public String currentDigest(OffHeapLongMapCache<V> cache) {
+        return cache.getDigest().getDigest();
+    }
+
+    @Override
+    public Object updateCache(OffHeapLongMapCache<V> cache, Object update) {
+        LongMapUpdate u = (LongMapUpdate) update;
+        byte[] previous = u.isRemoved()
+                ? remove(cache, u.getKey())
+                : put(cache, u.getKey(), encodeValue(valueClass.cast(u.getValue())));
+
+        return new Object[]{u.getKey(), previous};
+    }
+
+    @Override
+    public void rollbackCache(OffHeapLongMapCache<V> cache, Object undo) {
+        Object[] u = (Object[]) undo;
+        long key = (Long) u[0];
+        if (u[1] == null) {
+            remove(cache, key);
+        } else {
+            put(cache, key, (byte[]) u[1]);
+        }
+    }
+
+    @Override
+    public void serializeCache(OffHeapLongMapCache<V> cache, OutputStream output) {
+        try {
+            cache.writeTo(output);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public OffHeapLongMapCache<V> deserializeCache(InputStream input) {
+        try {
+            OffHeapLongMapCache<V> cache = OffHeapLongMapCache.readFrom(input, chunkSize, decoder);
+            initDigest(cache);
+            return cache;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public OffHeapLongMapCache<V> mapCache(File file) throws IOException {
+        OffHeapLongMapCache<V> cache = OffHeapLongMapCache.map(file, chunkSize, decoder);
+        initDigest(cache);
+        return cache;
+    }
+
+    protected long hashEntry(long key, ByteBuffer value) {
+        return CombinableDigest.hash(value) * 31 + key;
+    }
+
+    private CombinableDigest computeDigest(OffHeapLongMapCache<V> cache) {
+        final CombinableDigest digest = new CombinableDigest();
+        cache.forEachRecord(new OffHeapLongMapCache.RecordConsumer() {
+            @Override
+            public void accept(long key, ByteBuffer value) {
+                digest.add(hashEntry(key, value));
+            }
+        });
+
+        return digest;
+    }
+
+    private void initDigest(final OffHeapLongMapCache<V> cache) {
+        cache.forEachRecord(new OffHeapLongMapCache.RecordConsumer() {
+            @Override
+            public void accept(long key, ByteBuffer value) {
+                cache.getDigest().add(hashEntry(key, value));
+            }
+        });
+    }
+
+    private byte[] put(OffHeapLongMapCache<V> cache, long key, byte[] value) {
+        byte[] previous = cache.put(key, value);
+        if (previous != null) {
+            cache.getDigest().remove(hashEntry(key, ByteBuffer.wrap(previous)));
+        }
+
+        cache.getDigest().add(hashEntry(key, ByteBuffer.wrap(value)));
+        return previous;
+    }
+
+    private byte[] remove(OffHeapLongMapCache<V> cache, long key) {
+        byte[] previous = cache.remove(key);
+        if (previous != null) {
+            cache.getDigest().remove(hashEntry(key, ByteBuffer.wrap(previous)));
+        }
+
+        return previous;
+    }
+
+}
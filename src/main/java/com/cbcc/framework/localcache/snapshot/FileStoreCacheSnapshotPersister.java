@@ -46,7 +46,7 @@ public class FileStoreCacheSnapshotPersister extends RollingCacheSnapshotPersist
     }
 
     @Override
-    public InputStream getInputStream(Snapshot snapshot) {
+    protected InputStream doGetInputStream(Snapshot snapshot) {
         return fileStore.getInputStream(bucket, getPath(snapshot), dataProcessor);
     }
 
@@ -87,6 +87,10 @@ public class FileStoreCacheSnapshotPersister extends RollingCacheSnapshotPersist
             m.put("eventId", snapshot.getEventId().toString());
         }
 
+        if (snapshot.getBaseId() != null) {
+            m.put("baseId", snapshot.getBaseId());
+        }
+
         Metadata metadata = new Metadata();
         metadata.setUserMetadata(m);
         return metadata;
@@ -106,6 +110,8 @@ public class FileStoreCacheSnapshotPersister extends RollingCacheSnapshotPersist
             snapshot.setEventId(Long.valueOf(eventId));
         }
 
+        snapshot.setBaseId(m.get("baseId"));
+
         return snapshot;
     }
 
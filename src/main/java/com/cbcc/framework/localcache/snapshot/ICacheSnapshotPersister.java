@@ -2,6 +2,7 @@ package com.cbcc.framework.localcache.snapshot;
 
 import com.cbcc.framework.localcache.event.UpdateEvent;
 
+import java.io.File;
 import java.io.InputStream;
 
 public interface ICacheSnapshotPersister {
@@ -10,6 +11,20 @@ public interface ICacheSnapshotPersister {
 
     Snapshot getLastestSnapshot(String cacheName);
 
+    /**
+     * 返回重建缓存时使用的快照，默认为最新的快照
+     */
+    default Snapshot getRestorableSnapshot(String cacheName) {
+        return getLastestSnapshot(cacheName);
+    }
+
     InputStream getInputStream(Snapshot snapshot);
 
+    /**
+     * 返回快照在本地磁盘上的完整副本，可直接映射到内存，没有时返回null
+     */
+    default File getLocalFile(Snapshot snapshot) {
+        return null;
+    }
+
 }
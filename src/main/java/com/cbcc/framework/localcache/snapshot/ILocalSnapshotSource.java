@@ -0,0 +1,15 @@
+package com.cbcc.framework.localcache.snapshot;
+
+/**
+ * 使用LocalCacheSnapshotPersister的缓存，由CacheManager在构建时注册，应用停止时写入本地快照
+ */
+public interface ILocalSnapshotSource {
+
+    String getCacheName();
+
+    /**
+     * 将内存中的缓存写入本地快照，未写入时返回false
+     */
+    boolean saveLocalSnapshot();
+
+}
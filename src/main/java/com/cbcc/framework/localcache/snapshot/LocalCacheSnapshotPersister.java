@@ -0,0 +1,410 @@
+package com.cbcc.framework.localcache.snapshot;
+
+import com.cbcc.framework.localcache.event.UpdateEvent;
+import com.cbcc.framework.utils.GUID;
+import com.cbcc.framework.utils.JsonUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 在任意ICacheSnapshotPersister之前增加一层本地磁盘快照：
+ * 1. 创建快照时同时在本地保留一份副本；
+ * 2. 应用正常停止时，将本节点内存中的缓存写入本地快照；
+ * 3. 重建缓存时，若本地快照与远端最新快照的ID和摘要一致，或本地快照更新，则直接从本地加载，只追赶其后的事件。
+ *    从本地快照恢复后CacheManager按摘要校验恢复的缓存，不一致时丢弃本地快照改用远端快照。
+ *
+ * 本地快照只用于本节点的恢复，检查点和事件清理仍以远端快照为准。
+ */
+public class LocalCacheSnapshotPersister implements ICacheSnapshotPersister, SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalCacheSnapshotPersister.class);
+
+    /**
+     * 在事件总线之后停止，保证写入本地快照时不再有事件到达（CacheWarmer.PHASE - 2）
+     */
+    public static final int PHASE = Integer.MAX_VALUE - 1026;
+
+    private static final String META_FILE = "latest.json";
+    private static final String DATA_SUFFIX = ".data";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * 将读取的数据同时写入本地文件，写入失败不影响远端快照
+     */
+    private static class LocalCopyInputStream extends FilterInputStream {
+
+        private OutputStream copy;
+        private boolean eof;
+
+        LocalCopyInputStream(InputStream input, OutputStream copy) {
+            super(input);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                eof = true;
+            } else if (copy != null) {
+                try {
+                    copy.write(b);
+                } catch (IOException e) {
+                    abandon();
+                }
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n < 0) {
+                eof = true;
+            } else if (copy != null) {
+                try {
+                    copy.write(b, off, n);
+                } catch (IOException e) {
+                    abandon();
+                }
+            }
+
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            abandon();
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * 关闭本地副本，返回副本是否完整
+         */
+        boolean finish() {
+            if (copy == null) {
+                return false;
+            }
+
+            try {
+                copy.close();
+            } catch (IOException e) {
+                copy = null;
+                return false;
+            }
+
+            copy = null;
+            return eof;
+        }
+
+        void abandon() {
+            if (copy != null) {
+                try {
+                    copy.close();
+                } catch (IOException e) {
+                }
+
+                copy = null;
+            }
+        }
+    }
+
+    /**
+     * 将缓存写入本地快照文件
+     */
+    public interface SnapshotWriter {
+
+        void write(OutputStream output) throws IOException;
+
+    }
+
+    private final ICacheSnapshotPersister delegate;
+
+    @Value("${localcache.snapshot.local.dir:localcache-snapshot}")
+    private String dir = "localcache-snapshot";
+
+    @Value("${localcache.snapshot.local.saveOnShutdown:true}")
+    private boolean saveOnShutdown = true;
+
+    private final List<ILocalSnapshotSource> sources = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running;
+
+    public LocalCacheSnapshotPersister(ICacheSnapshotPersister delegate) {
+        this.delegate = delegate;
+    }
+
+    public ICacheSnapshotPersister getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * 注册使用本持久化器的缓存，应用停止时写入其本地快照
+     */
+    public void addLocalSnapshotSource(ILocalSnapshotSource source) {
+        sources.add(source);
+    }
+
+    @Override
+    public Snapshot createSnapshot(String cacheName, UpdateEvent event, InputStream input, String digest) {
+        File temp = null;
+        OutputStream copy = null;
+        try {
+            temp = newTempFile(cacheName);
+            copy = new BufferedOutputStream(new FileOutputStream(temp));
+        } catch (IOException e) {
+            logger.warn("Failed to create local snapshot file, cache: " + cacheName, e);
+        }
+
+        LocalCopyInputStream tee = new LocalCopyInputStream(input, copy);
+        Snapshot snapshot;
+        try {
+            snapshot = delegate.createSnapshot(cacheName, event, tee, digest);
+        } catch (RuntimeException e) {
+            tee.abandon();
+            delete(temp);
+            throw e;
+        }
+
+        if (tee.finish()) {
+            try {
+                commit(snapshot, temp);
+            } catch (IOException e) {
+                logger.warn("Failed to save local snapshot, cache: " + cacheName, e);
+                delete(temp);
+            }
+        } else {
+            delete(temp);
+        }
+
+        return snapshot;
+    }
+
+    @Override
+    public Snapshot getLastestSnapshot(String cacheName) {
+        return delegate.getLastestSnapshot(cacheName);
+    }
+
+    @Override
+    public Snapshot getRestorableSnapshot(String cacheName) {
+        Snapshot remote = delegate.getRestorableSnapshot(cacheName);
+        Snapshot local = readLocalSnapshot(cacheName);
+        if (local == null) {
+            return remote;
+        }
+
+        if (remote == null || isUsable(local, remote)) {
+            logger.info("Restore from local snapshot: " + local.getId() + ", cache: " + cacheName);
+            return local;
+        }
+
+        return remote;
+    }
+
+    @Override
+    public InputStream getInputStream(Snapshot snapshot) {
+        Snapshot local = readLocalSnapshot(snapshot.getCacheName());
+        if (local != null && Objects.equals(local.getId(), snapshot.getId())) {
+            try {
+                return new BufferedInputStream(new FileInputStream(getDataFile(local)));
+            } catch (FileNotFoundException e) {
+                logger.warn("Local snapshot removed: " + snapshot.getId());
+            }
+        }
+
+        return delegate.getInputStream(snapshot);
+    }
+
+    @Override
+    public File getLocalFile(Snapshot snapshot) {
+        Snapshot local = readLocalSnapshot(snapshot.getCacheName());
+        if (local == null || !Objects.equals(local.getId(), snapshot.getId())) {
+            return null;
+        }
+
+        return getDataFile(local);
+    }
+
+    /**
+     * 将本节点内存中的缓存写入本地快照，调用方需保证缓存在写入期间不被修改
+     */
+    public void saveLocalSnapshot(String cacheName, Long eventId, String digest, SnapshotWriter writer) {
+
+        Snapshot snapshot = new Snapshot();
+        snapshot.setId(GUID.get());
+        snapshot.setCacheName(cacheName);
+        snapshot.setTime(new Date());
+        snapshot.setEventId(eventId);
+        snapshot.setDigest(digest);
+
+        File temp = null;
+        try {
+            temp = newTempFile(cacheName);
+            try (OutputStream output = new BufferedOutputStream(new FileOutputStream(temp))) {
+                writer.write(output);
+            }
+
+            commit(snapshot, temp);
+        } catch (IOException e) {
+            delete(temp);
+            throw new RuntimeException("Failed to save local snapshot, cache: " + cacheName, e);
+        } catch (RuntimeException e) {
+            delete(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * 快照是否从本地读取
+     */
+    public boolean isLocalSnapshot(Snapshot snapshot) {
+        Snapshot local = readLocalSnapshot(snapshot.getCacheName());
+        return local != null && Objects.equals(local.getId(), snapshot.getId());
+    }
+
+    /**
+     * 丢弃本地快照，之后只使用远端快照
+     */
+    public synchronized void discardLocalSnapshot(String cacheName) {
+        File cacheDir = getCacheDir(cacheName);
+        delete(new File(cacheDir, META_FILE));
+
+        File[] files = cacheDir.listFiles((d, name) -> name.endsWith(DATA_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                delete(file);
+            }
+        }
+    }
+
+    /**
+     * 与远端快照为同一快照（ID或eventId相同）时要求摘要一致；本地快照更新时可直接使用，之后的事件由追赶补齐
+     */
+    private boolean isUsable(Snapshot local, Snapshot remote) {
+        if (Objects.equals(local.getId(), remote.getId())
+                || Objects.equals(local.getEventId(), remote.getEventId())) {
+
+            return Objects.equals(local.getDigest(), remote.getDigest());
+        }
+
+        if (local.getEventId() == null) {
+            return false;
+        }
+
+        return remote.getEventId() == null || local.getEventId() > remote.getEventId();
+    }
+
+    private synchronized void commit(Snapshot snapshot, File temp) throws IOException {
+        File cacheDir = getCacheDir(snapshot.getCacheName());
+        File data = getDataFile(snapshot);
+        Files.move(temp.toPath(), data.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        File metaTemp = new File(cacheDir, META_FILE + TEMP_SUFFIX);
+        Files.write(metaTemp.toPath(), JsonUtil.toJson(snapshot).getBytes(StandardCharsets.UTF_8));
+        Files.move(metaTemp.toPath(), new File(cacheDir, META_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        File[] files = cacheDir.listFiles((d, name) -> name.endsWith(DATA_SUFFIX) && !name.equals(data.getName()));
+        if (files != null) {
+            for (File file : files) {
+                delete(file);
+            }
+        }
+    }
+
+    private Snapshot readLocalSnapshot(String cacheName) {
+        File meta = new File(getCacheDir(cacheName), META_FILE);
+        if (!meta.isFile()) {
+            return null;
+        }
+
+        try {
+            String content = new String(Files.readAllBytes(meta.toPath()), StandardCharsets.UTF_8);
+            Snapshot snapshot = JsonUtil.toBean(content, Snapshot.class);
+            if (snapshot == null || !cacheName.equals(snapshot.getCacheName()) || !getDataFile(snapshot).isFile()) {
+                return null;
+            }
+
+            return snapshot;
+        } catch (Exception e) {
+            logger.warn("Failed to read local snapshot, cache: " + cacheName, e);
+            return null;
+        }
+    }
+
+    private File getCacheDir(String cacheName) {
+        return new File(dir, cacheName);
+    }
+
+    private File getDataFile(Snapshot snapshot) {
+        return new File(getCacheDir(snapshot.getCacheName()), snapshot.getId() + DATA_SUFFIX);
+    }
+
+    private File newTempFile(String cacheName) throws IOException {
+        File cacheDir = getCacheDir(cacheName);
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IOException("Failed to create directory: " + cacheDir.getAbsolutePath());
+        }
+
+        return File.createTempFile("snapshot-", TEMP_SUFFIX, cacheDir);
+    }
+
+    private static void delete(File file) {
+        if (file != null && file.exists() && !file.delete()) {
+            logger.warn("Failed to delete file: " + file);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (!saveOnShutdown) {
+            return;
+        }
+
+        for (ILocalSnapshotSource source : sources) {
+            long start = System.currentTimeMillis();
+            try {
+                if (source.saveLocalSnapshot()) {
+                    logger.info("Saved local snapshot in " + (System.currentTimeMillis() - start)
+                            + "ms, cache: " + source.getCacheName());
+                }
+            } catch (Exception e) {
+                logger.error("Failed to save local snapshot, cache: " + source.getCacheName(), e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+}
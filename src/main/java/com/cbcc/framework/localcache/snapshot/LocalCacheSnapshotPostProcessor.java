@@ -0,0 +1,33 @@
+package com.cbcc.framework.localcache.snapshot;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * 为容器中的ICacheSnapshotPersister增加本地快照层：用LocalCacheSnapshotPersister包装原有的持久化器，
+ * 包装后的对象以原bean的名称暴露，并按普通bean完成注入和初始化。没有快照持久化器时不做任何处理。
+ */
+public class LocalCacheSnapshotPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+    private AutowireCapableBeanFactory beanFactory;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = (AutowireCapableBeanFactory) beanFactory;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (!(bean instanceof ICacheSnapshotPersister) || bean instanceof LocalCacheSnapshotPersister) {
+            return bean;
+        }
+
+        LocalCacheSnapshotPersister persister = new LocalCacheSnapshotPersister((ICacheSnapshotPersister) bean);
+        beanFactory.autowireBean(persister);
+        return beanFactory.initializeBean(persister, beanName);
+    }
+
+}
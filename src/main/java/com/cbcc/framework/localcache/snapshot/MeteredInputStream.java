@@ -0,0 +1,60 @@
+package com.cbcc.framework.localcache.snapshot;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 统计读取的字节数和阻塞在读取上的耗时，用于区分快照的下载耗时和反序列化耗时
+ */
+public class MeteredInputStream extends FilterInputStream {
+
+    private long bytes;
+    private long readNanos;
+
+    public MeteredInputStream(InputStream input) {
+        super(input);
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int b = super.read();
+        readNanos += System.nanoTime() - start;
+        if (b >= 0) {
+            bytes++;
+        }
+
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        int n = super.read(b, off, len);
+        readNanos += System.nanoTime() - start;
+        if (n > 0) {
+            bytes += n;
+        }
+
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long start = System.nanoTime();
+        long skipped = super.skip(n);
+        readNanos += System.nanoTime() - start;
+        bytes += skipped;
+        return skipped;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+}
@@ -2,19 +2,135 @@ package com.cbcc.framework.localcache.snapshot;
 
 import com.cbcc.framework.localcache.event.UpdateEvent;
 import com.cbcc.framework.utils.GUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 
-import java.io.InputStream;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Date;
-import java.util.List;
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class RollingCacheSnapshotPersister implements ICacheSnapshotPersister {
 
+    private static final Logger logger = LoggerFactory.getLogger(RollingCacheSnapshotPersister.class);
+
+    private static final int DELTA_MAGIC = 0x4C434453;
+
+    /**
+     * 最近一次全量快照的分段摘要，用于计算增量
+     */
+    private static class DeltaBase {
+        private final String id;
+        private final int segmentSize;
+        private final List<byte[]> hashes;
+        private int chainLength;
+
+        DeltaBase(String id, int segmentSize, List<byte[]> hashes) {
+            this.id = id;
+            this.segmentSize = segmentSize;
+            this.hashes = hashes;
+        }
+    }
+
+    /**
+     * 按分段合并全量快照和增量：增量中包含的分段取增量，其余取全量快照
+     */
+    private static class DeltaInputStream extends InputStream {
+
+        private final InputStream base;
+        private final int segmentSize;
+        private final long length;
+        private final Map<Integer, byte[]> segments;
+
+        private long position;
+        private byte[] segment = new byte[0];
+        private int segmentLength;
+        private int segmentPosition;
+
+        DeltaInputStream(InputStream base, int segmentSize, long length, Map<Integer, byte[]> segments) {
+            this.base = base;
+            this.segmentSize = segmentSize;
+            this.length = length;
+            this.segments = segments;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (segmentPosition >= segmentLength) {
+                if (position >= length) {
+                    return -1;
+                }
+
+                nextSegment();
+            }
+
+            int n = Math.min(len, segmentLength - segmentPosition);
+            System.arraycopy(segment, segmentPosition, b, off, n);
+            segmentPosition += n;
+            position += n;
+            return n;
+        }
+
+        private void nextSegment() throws IOException {
+            int index = (int) (position / segmentSize);
+            int expected = (int) Math.min(segmentSize, length - position);
+
+            if (segment.length < segmentSize) {
+                segment = new byte[segmentSize];
+            }
+
+            // 无论是否被增量覆盖，都要读过全量快照中对应的分段
+            int n = readFully(base, segment, segmentSize);
+
+            byte[] changed = segments.get(index);
+            if (changed != null) {
+                System.arraycopy(changed, 0, segment, 0, changed.length);
+                n = changed.length;
+            }
+
+            if (n != expected) {
+                throw new IOException("Corrupted delta snapshot at segment " + index);
+            }
+
+            segmentLength = n;
+            segmentPosition = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            base.close();
+        }
+    }
+
     @Value("${localcache.snapshot.remains:3}")
     private int remains = 3;
 
+    @Value("${localcache.snapshot.delta.enabled:false}")
+    private boolean deltaEnabled;
+
+    @Value("${localcache.snapshot.delta.segmentSize:65536}")
+    private int deltaSegmentSize = 64 * 1024;
+
+    @Value("${localcache.snapshot.delta.maxChainLength:10}")
+    private int maxDeltaChainLength = 10;
+
+    @Value("${localcache.snapshot.delta.maxRatio:0.5}")
+    private double maxDeltaRatio = 0.5;
+
+    private final Map<String, DeltaBase> deltaBases = new ConcurrentHashMap<>();
+
     @Override
     public final Snapshot createSnapshot(String cacheName, UpdateEvent event, InputStream input, String digest) {
         Snapshot snapshot = new Snapshot();
@@ -27,8 +143,103 @@ public abstract class RollingCacheSnapshotPersister implements ICacheSnapshotPer
             snapshot.setEventId(event.getId());
         }
 
-        doCreateSnapshot(snapshot, input);
+        if (deltaEnabled) {
+            createDeltaOrFullSnapshot(snapshot, input);
+        } else {
+            doCreateSnapshot(snapshot, input);
+        }
+
+        List<Snapshot> snapshotList = getSortedSnapshotList(cacheName);
+        int total = snapshotList.size();
+        if (remains > 0 && total > remains) {
+            // 保留的增量快照所依赖的全量快照不能删除
+            Set<String> referenced = new HashSet<>();
+            for (int i = total - remains; i < total; i++) {
+                String baseId = snapshotList.get(i).getBaseId();
+                if (baseId != null) {
+                    referenced.add(baseId);
+                }
+            }
+
+            for (int i = 0, n = total - remains; i < n; i++) {
+                Snapshot s = snapshotList.get(i);
+                if (!referenced.contains(s.getId())) {
+                    deleteSnapshot(cacheName, s);
+                }
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * 增量快照由增量和其依赖的全量快照合并而成，对调用方透明。子类通过doGetInputStream读取存储中的数据
+     */
+    @Override
+    public final InputStream getInputStream(Snapshot snapshot) {
+        if (snapshot.getBaseId() == null) {
+            return doGetInputStream(snapshot);
+        }
+
+        int segmentSize;
+        long length;
+        Map<Integer, byte[]> segments = new HashMap<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(doGetInputStream(snapshot)))) {
+            if (input.readInt() != DELTA_MAGIC) {
+                throw new IOException("Not a delta snapshot: " + snapshot.getId());
+            }
+
+            segmentSize = input.readInt();
+            int index;
+            while ((index = input.readInt()) >= 0) {
+                byte[] bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+                segments.put(index, bytes);
+            }
+
+            length = input.readLong();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read delta snapshot: " + snapshot.getId(), e);
+        }
+
+        Snapshot base = new Snapshot();
+        base.setId(snapshot.getBaseId());
+        base.setCacheName(snapshot.getCacheName());
+        return new DeltaInputStream(doGetInputStream(base), segmentSize, length, segments);
+    }
+
+    /**
+     * 最新的快照为增量快照但其全量快照已被删除时，退回到最新的全量快照
+     */
+    @Override
+    public Snapshot getRestorableSnapshot(String cacheName) {
+        Snapshot snapshot = getLastestSnapshot(cacheName);
+        if (snapshot == null || snapshot.getBaseId() == null || exists(cacheName, snapshot.getBaseId())) {
+            return snapshot;
+        }
 
+        logger.warn("Base snapshot " + snapshot.getBaseId() + " of delta snapshot " + snapshot.getId()
+                + " not found, fall back to full snapshot, cache: " + cacheName);
+
+        List<Snapshot> snapshotList = getSortedSnapshotList(cacheName);
+        for (int i = snapshotList.size() - 1; i >= 0; i--) {
+            if (snapshotList.get(i).getBaseId() == null) {
+                return snapshotList.get(i);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * 返回保留的快照中最早的一个，该快照之前的事件已不再需要
+     */
+    public Snapshot getOldestSnapshot(String cacheName) {
+        List<Snapshot> snapshotList = getSortedSnapshotList(cacheName);
+        return snapshotList.isEmpty() ? null : snapshotList.get(0);
+    }
+
+    private List<Snapshot> getSortedSnapshotList(String cacheName) {
         List<Snapshot> snapshotList = getSnapshotList(cacheName);
         Collections.sort(snapshotList, new Comparator<Snapshot>() {
             @Override
@@ -37,16 +248,128 @@ public abstract class RollingCacheSnapshotPersister implements ICacheSnapshotPer
             }
         });
 
-        int total = snapshotList.size();
-        if (remains > 0 && total > remains) {
-            for (int i = 0, n = total - remains; i < n; i++) {
-                deleteSnapshot(cacheName, snapshotList.get(i));
+        return snapshotList;
+    }
+
+    /**
+     * 先将快照落到临时文件并按分段计算摘要，与最近的全量快照比较：
+     * 变化的数据不超过maxRatio且增量链未超过maxChainLength时只保存变化的分段，否则保存全量快照并以其为新的基准。
+     * 增量都是相对于同一个全量快照的，恢复时只需读取全量快照和最新的一个增量。
+     */
+    private void createDeltaOrFullSnapshot(Snapshot snapshot, InputStream input) {
+        String cacheName = snapshot.getCacheName();
+        DeltaBase base = deltaBases.get(cacheName);
+        if (base != null && (base.chainLength >= maxDeltaChainLength || !exists(cacheName, base.id))) {
+            base = null;
+        }
+
+        int segmentSize = base == null ? deltaSegmentSize : base.segmentSize;
+        File full = null;
+        File delta = null;
+        try {
+            full = File.createTempFile("localcache-snapshot-", ".tmp");
+            delta = File.createTempFile("localcache-delta-", ".tmp");
+
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            List<byte[]> hashes = new ArrayList<>();
+            long length = 0;
+            long changedLength = 0;
+
+            try (OutputStream fullOutput = new BufferedOutputStream(new FileOutputStream(full));
+                 DataOutputStream deltaOutput = new DataOutputStream(
+                         new BufferedOutputStream(new FileOutputStream(delta)))) {
+
+                deltaOutput.writeInt(DELTA_MAGIC);
+                deltaOutput.writeInt(segmentSize);
+
+                byte[] buffer = new byte[segmentSize];
+                int n;
+                while ((n = readFully(input, buffer, segmentSize)) > 0) {
+                    int index = hashes.size();
+                    md5.update(buffer, 0, n);
+                    byte[] hash = md5.digest();
+                    hashes.add(hash);
+                    fullOutput.write(buffer, 0, n);
+                    length += n;
+
+                    if (base != null && (index >= base.hashes.size() || !Arrays.equals(hash, base.hashes.get(index)))) {
+                        deltaOutput.writeInt(index);
+                        deltaOutput.writeInt(n);
+                        deltaOutput.write(buffer, 0, n);
+                        changedLength += n;
+                    }
+                }
+
+                deltaOutput.writeInt(-1);
+                deltaOutput.writeLong(length);
+            }
+
+            if (base != null && changedLength <= length * maxDeltaRatio) {
+                snapshot.setBaseId(base.id);
+                try (InputStream deltaInput = new BufferedInputStream(new FileInputStream(delta))) {
+                    doCreateSnapshot(snapshot, deltaInput);
+                }
+
+                // 检查后全量快照可能被其他节点滚动删除，此时改为保存全量快照
+                if (exists(cacheName, base.id)) {
+                    base.chainLength++;
+                    logger.info("Created delta snapshot with " + changedLength + "/" + length
+                            + " bytes changed, cache: " + cacheName);
+                    return;
+                }
+
+                logger.warn("Base snapshot " + base.id + " deleted while creating delta snapshot, cache: " + cacheName);
+                deleteSnapshot(cacheName, snapshot);
+                snapshot.setBaseId(null);
+            }
+
+            try (InputStream fullInput = new BufferedInputStream(new FileInputStream(full))) {
+                doCreateSnapshot(snapshot, fullInput);
+            }
+
+            deltaBases.put(cacheName, new DeltaBase(snapshot.getId(), segmentSize, hashes));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new RuntimeException("Failed to create snapshot, cache: " + cacheName, e);
+        } finally {
+            delete(full);
+            delete(delta);
+        }
+    }
+
+    private boolean exists(String cacheName, String snapshotId) {
+        for (Snapshot snapshot : getSnapshotList(cacheName)) {
+            if (snapshotId.equals(snapshot.getId())) {
+                return true;
             }
         }
 
-        return snapshot;
+        return false;
+    }
+
+    private static int readFully(InputStream input, byte[] buffer, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int n = input.read(buffer, total, len - total);
+            if (n < 0) {
+                break;
+            }
+
+            total += n;
+        }
+
+        return total;
+    }
+
+    private static void delete(File file) {
+        if (file != null && file.exists() && !file.delete()) {
+            logger.warn("Failed to delete temp file: " + file);
+        }
     }
 
+    /**
+     * 读取存储中的快照数据，增量快照和其全量快照都通过此方法读取
+     */
+    protected abstract InputStream doGetInputStream(Snapshot snapshot);
     protected abstract void doCreateSnapshot(Snapshot snapshot, InputStream input);
     protected abstract List<Snapshot> getSnapshotList(String cacheName);
     protected abstract void deleteSnapshot(String cacheName, Snapshot snapshot);
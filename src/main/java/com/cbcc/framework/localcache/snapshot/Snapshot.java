@@ -15,4 +15,9 @@ public class Snapshot {
     private Long eventId;
     private String digest;
 
+    /**
+     * 增量快照所依赖的全量快照，全量快照为null
+     */
+    private String baseId;
+
 }